@@ -6,8 +6,9 @@ if ! test -x "$RUNNER" ; then
   test -r "$ICU4J" || ICU4J=/usr/share/icu4j-55/lib/icu4j.jar
   COMMONS_COMPRESS=/usr/share/java/commons-compress.jar
   COMMONS_IO=/usr/share/java/commons-io.jar
+  ZSTD_JNI=/usr/share/java/zstd-jni.jar
   JAVA=/usr/lib/jvm/java-8-openjdk-amd64/jre/bin/java
   test -x "$JAVA" || JAVA=java
-  RUNNER="$JAVA -Xmx4096m -Xverify:none -classpath bin/:$ICU4J:$COMMONS_COMPRESS:$COMMONS_IO com.hughes.android.dictionary.engine.Runner"
+  RUNNER="$JAVA -Xmx4096m -Xverify:none -classpath bin/:$ICU4J:$COMMONS_COMPRESS:$COMMONS_IO:$ZSTD_JNI com.hughes.android.dictionary.engine.Runner"
 fi
 $RUNNER WiktionarySplitter "$@"
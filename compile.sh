@@ -8,6 +8,8 @@ COMMONS=/usr/share/java/commons-text.jar
 test -r "$COMMONS" || COMMONS=$(pwd)/commons-text-1.13.1.jar
 COMMONS_COMPRESS=/usr/share/java/commons-compress.jar
 test -r "$COMMONS_COMPRESS" || COMMONS_COMPRESS=$(pwd)/commons-compress-1.27.1.jar
+ZSTD_JNI=/usr/share/java/zstd-jni.jar
+test -r "$ZSTD_JNI" || ZSTD_JNI=$(pwd)/zstd-jni-1.5.7-4.jar
 if [ ! -x ../Dictionary ] ; then
     echo "You need to clone the Dictionary repository (including subprojects) into .., alongside this DictionaryPC clone"
     exit 1
@@ -36,13 +38,18 @@ if [ ! -r "$COMMONS_COMPRESS" ] ; then
     echo "Download from https://repo1.maven.org/maven2/org/apache/commons/commons-compress/1.27.1/commons-compress-1.27.1.jar"
     exit 1;
 fi
+SOURCES=$(ls ../Dictionary/Util/src/com/hughes/util/*.java ../Dictionary/Util/src/com/hughes/util/raf/*.java ../Dictionary/src/com/hughes/android/dictionary/engine/*.java src/com/hughes/util/*.java src/com/hughes/android/dictionary/*.java src/com/hughes/android/dictionary/*/*.java src/com/hughes/android/dictionary/*/*/*.java)
+if [ ! -r "$ZSTD_JNI" ] ; then
+    echo "zstd-jni not found, building without zstd support (WiktionarySplitter's 'zstd' and 'zstddict', .zst split files)"
+    echo "Download from https://repo1.maven.org/maven2/com/github/luben/zstd-jni/1.5.7-4/zstd-jni-1.5.7-4.jar"
+    SOURCES=$(echo "$SOURCES" | grep -v ZstdJniCodec.java)
+fi
 # https://repo1.maven.org/maven2/org/apache/commons/commons-lang3/3.18.0/commons-lang3-3.18.0.jar
 # https://repo1.maven.org/maven2/org/tukaani/xz/1.10/xz-1.10.jar
-# https://repo1.maven.org/maven2/com/github/luben/zstd-jni/1.5.7-4/zstd-jni-1.5.7-4.jar
 mkdir -p bin
 # -encoding is just a work around for user that still run systems
 # with non-UTF8 locales
-javac --release 21 --limit-modules java.xml,java.logging -Xlint:all -encoding UTF-8 -g -d bin/ ../Dictionary/Util/src/com/hughes/util/*.java ../Dictionary/Util/src/com/hughes/util/raf/*.java ../Dictionary/src/com/hughes/android/dictionary/engine/*.java src/com/hughes/util/*.java src/com/hughes/android/dictionary/*.java src/com/hughes/android/dictionary/*/*.java src/com/hughes/android/dictionary/*/*/*.java -classpath "$ICU4J:$JUNIT:$COMMONS:$COMMONS_COMPRESS"
+javac --release 21 --limit-modules java.xml,java.logging -Xlint:all -encoding UTF-8 -g -d bin/ $SOURCES -classpath "$ICU4J:$JUNIT:$COMMONS:$COMMONS_COMPRESS:$ZSTD_JNI"
 if [ "$?" != "0" ] ; then
     echo "compilation failed, check output above for errors!"
     exit 1;
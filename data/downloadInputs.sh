@@ -11,6 +11,12 @@ echo "Downloading from: https://dumps.wikimedia.org/${L}wiktionary/"
 WIKI=${L}wiktionary-latest-pages-articles.xml
 curl -L --remote-name https://dumps.wikimedia.org/${L}wiktionary/latest/${WIKI}.bz2
 mv ${WIKI}.bz2 inputs/${L}wiktionary-pages-articles.xml.bz2
+# For "WiktionarySplitter.sh multistream", which can split this much faster:
+#MULTI=${L}wiktionary-latest-pages-articles-multistream
+#curl -L --remote-name https://dumps.wikimedia.org/${L}wiktionary/latest/${MULTI}.xml.bz2
+#curl -L --remote-name https://dumps.wikimedia.org/${L}wiktionary/latest/${MULTI}-index.txt.bz2
+#mv ${MULTI}.xml.bz2 inputs/${L}wiktionary-pages-articles-multistream.xml.bz2
+#mv ${MULTI}-index.txt.bz2 inputs/${L}wiktionary-pages-articles-multistream-index.txt.bz2
 
 echo "Downloading from: https://ftp.tu-chemnitz.de/pub/Local/urz/ding/de-en-devel/"
 CHEMNITZ=de-en.txt
@@ -0,0 +1,292 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+/**
+ * Split file (see WiktionarySplitter) made of independently gzip compressed
+ * chunks of records, followed by an index with the position of each chunk
+ * and the titles of its records.
+ * This allows reading only some chunks, e.g. a sample or the ones
+ * containing a title, or reading them on several threads.
+ * The records are the same as in the plain .gz files: writeUTF(title),
+ * writeUTF(heading), writeInt(length) and the UTF-8 text.
+ * Layout: MAGIC, VERSION, chunks, index (also gzip), long index offset, MAGIC.
+ */
+public final class ChunkedSplitFile {
+    public static final String SUFFIX = ".chunked";
+
+    private static final int MAGIC = 0x44535046;  // "DSPF"
+    private static final int VERSION = 1;
+    // Uncompressed, only checked after each record
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private ChunkedSplitFile() {
+    }
+
+    /**
+     * Collects the records written to it into chunks, the writer of the
+     * records has to call endRecord() after each of them.
+     */
+    public static final class Writer extends OutputStream {
+        private final DataOutputStream out;
+        private long offset = 0;
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_SIZE + CHUNK_SIZE / 4);
+        private final List<String> chunkTitles = new ArrayList<>();
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private int chunkCount = 0;
+
+        public Writer(final File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            offset = 8;
+        }
+
+        @Override
+        public void write(final int b) {
+            chunk.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            chunk.write(b, off, len);
+        }
+
+        public void endRecord(final String title) throws IOException {
+            chunkTitles.add(title);
+            if (chunk.size() >= CHUNK_SIZE) {
+                writeChunk();
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            final byte[] compressed = compress(chunk);
+            out.write(compressed);
+            indexOut.writeLong(offset);
+            indexOut.writeInt(compressed.length);
+            indexOut.writeInt(chunkTitles.size());
+            for (final String title : chunkTitles) {
+                indexOut.writeUTF(title);
+            }
+            offset += compressed.length;
+            ++chunkCount;
+            chunk.reset();
+            chunkTitles.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!chunkTitles.isEmpty()) {
+                writeChunk();
+            }
+            final ByteArrayOutputStream indexWithCount = new ByteArrayOutputStream(index.size() + 4);
+            new DataOutputStream(indexWithCount).writeInt(chunkCount);
+            index.writeTo(indexWithCount);
+            out.write(compress(indexWithCount));
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+
+        private static byte[] compress(final ByteArrayOutputStream data) throws IOException {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.size() / 3);
+            try (OutputStream gzip = new CompressorStreamFactory().createCompressorOutputStream(CompressorStreamFactory.GZIP, compressed)) {
+                data.writeTo(gzip);
+            } catch (CompressorException e) {
+                throw new IOException(e);
+            }
+            return compressed.toByteArray();
+        }
+    }
+
+    public static final class Record {
+        public final String title;
+        public final String heading;
+        public final byte[] text;
+
+        Record(final String title, final String heading, final byte[] text) {
+            this.title = title;
+            this.heading = heading;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Reads the index on opening, the chunks can then be read in any order
+     * and from several threads at once.
+     */
+    public static final class Reader implements Closeable {
+        private final File file;
+        private final FileChannel channel;
+        private final long[] chunkOffsets;
+        private final int[] chunkLengths;
+        private final String[][] chunkTitles;
+        private Map<String, List<Integer>> titleToChunks = null;
+
+        public Reader(final File file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                // At least the header and the trailer
+                if (channel.size() < 20) {
+                    throw new IOException("Not a chunked split file: " + file);
+                }
+                final ByteBuffer trailer = read(channel.size() - 12, 12);
+                final long indexOffset = trailer.getLong();
+                if (trailer.getInt() != MAGIC || read(0, 8).getInt() != MAGIC
+                        || indexOffset < 8 || indexOffset > channel.size() - 12) {
+                    throw new IOException("Not a chunked split file: " + file);
+                }
+                final DataInputStream index = new DataInputStream(decompress(read(indexOffset, (int) (channel.size() - 12 - indexOffset))));
+                final int chunkCount = index.readInt();
+                chunkOffsets = new long[chunkCount];
+                chunkLengths = new int[chunkCount];
+                chunkTitles = new String[chunkCount][];
+                for (int i = 0; i < chunkCount; ++i) {
+                    chunkOffsets[i] = index.readLong();
+                    chunkLengths[i] = index.readInt();
+                    chunkTitles[i] = new String[index.readInt()];
+                    for (int j = 0; j < chunkTitles[i].length; ++j) {
+                        chunkTitles[i][j] = index.readUTF();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        public int getChunkCount() {
+            return chunkOffsets.length;
+        }
+
+        public int getRecordCount(final int chunk) {
+            return chunkTitles[chunk].length;
+        }
+
+        public String getTitle(final int chunk, final int record) {
+            return chunkTitles[chunk][record];
+        }
+
+        /** The chunks with records of this title. */
+        public synchronized List<Integer> findTitle(final String title) {
+            if (titleToChunks == null) {
+                titleToChunks = new HashMap<>();
+                for (int i = 0; i < chunkTitles.length; ++i) {
+                    for (final String t : chunkTitles[i]) {
+                        final List<Integer> chunks = titleToChunks.computeIfAbsent(t, k -> new ArrayList<>(1));
+                        if (chunks.isEmpty() || chunks.get(chunks.size() - 1) != i) chunks.add(i);
+                    }
+                }
+            }
+            return titleToChunks.getOrDefault(title, Collections.emptyList());
+        }
+
+        /** The uncompressed records of the chunk, as in the plain split files. */
+        public InputStream openChunk(final int chunk) throws IOException {
+            return decompress(read(chunkOffsets[chunk], chunkLengths[chunk]));
+        }
+
+        public List<Record> readChunk(final int chunk) throws IOException {
+            final List<Record> records = new ArrayList<>(chunkTitles[chunk].length);
+            try (DataInputStream in = new DataInputStream(openChunk(chunk))) {
+                for (int i = 0; i < chunkTitles[chunk].length; ++i) {
+                    final String title = in.readUTF();
+                    final String heading = in.readUTF();
+                    final byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    records.add(new Record(title, heading, text));
+                }
+            }
+            return records;
+        }
+
+        /** All records in order, like the plain split files. */
+        public InputStream openAll() {
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                int next = 0;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return next < chunkOffsets.length;
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    try {
+                        return openChunk(next++);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+
+        private ByteBuffer read(final long position, final int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private static InputStream decompress(final ByteBuffer compressed) throws IOException {
+            try {
+                return new CompressorStreamFactory().createCompressorInputStream(CompressorStreamFactory.GZIP,
+                        new ByteArrayInputStream(compressed.array(), 0, compressed.limit()));
+            } catch (CompressorException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ChunkedSplitFileTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("ChunkedSplitFileTest", ChunkedSplitFile.SUFFIX);
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    private static String text(final int record) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < record % 5000; ++i) {
+            text.append(record * 31 + i).append(" ä ");
+        }
+        return text.toString();
+    }
+
+    // Also what WiktionarySplitter.Section.write() does
+    private void write(final int records) throws IOException {
+        final ChunkedSplitFile.Writer chunks = new ChunkedSplitFile.Writer(file);
+        try (DataOutputStream out = new DataOutputStream(chunks)) {
+            for (int i = 0; i < records; ++i) {
+                final byte[] text = text(i).getBytes(StandardCharsets.UTF_8);
+                out.writeUTF("title" + i / 2);
+                out.writeUTF("heading" + i);
+                out.writeInt(text.length);
+                out.write(text);
+                chunks.endRecord("title" + i / 2);
+            }
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        final int records = 1000;
+        write(records);
+        try (ChunkedSplitFile.Reader reader = new ChunkedSplitFile.Reader(file)) {
+            assertTrue(reader.getChunkCount() > 3);
+            int record = 0;
+            for (int chunk = 0; chunk < reader.getChunkCount(); ++chunk) {
+                final List<ChunkedSplitFile.Record> chunkRecords = reader.readChunk(chunk);
+                assertEquals(reader.getRecordCount(chunk), chunkRecords.size());
+                for (int i = 0; i < chunkRecords.size(); ++i, ++record) {
+                    final ChunkedSplitFile.Record r = chunkRecords.get(i);
+                    assertEquals("title" + record / 2, r.title);
+                    assertEquals(r.title, reader.getTitle(chunk, i));
+                    assertEquals("heading" + record, r.heading);
+                    assertEquals(text(record), new String(r.text, StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(records, record);
+
+            // Same records as in a plain split file
+            try (DataInputStream in = new DataInputStream(reader.openAll())) {
+                for (record = 0; record < records; ++record) {
+                    assertEquals("title" + record / 2, in.readUTF());
+                    assertEquals("heading" + record, in.readUTF());
+                    final byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    assertEquals(text(record), new String(text, StandardCharsets.UTF_8));
+                }
+                try {
+                    in.readUTF();
+                    fail("more records than written");
+                } catch (EOFException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    public void testFindTitle() throws IOException {
+        write(1000);
+        try (ChunkedSplitFile.Reader reader = new ChunkedSplitFile.Reader(file)) {
+            for (final String title : new String[] { "title0", "title250", "title499" }) {
+                final List<Integer> chunks = reader.findTitle(title);
+                assertFalse(chunks.isEmpty());
+                final List<String> headings = new ArrayList<>();
+                for (final int chunk : chunks) {
+                    for (final ChunkedSplitFile.Record r : reader.readChunk(chunk)) {
+                        if (r.title.equals(title)) headings.add(r.heading);
+                    }
+                }
+                final int first = 2 * Integer.parseInt(title.substring(5));
+                assertEquals(Arrays.asList("heading" + first, "heading" + (first + 1)), headings);
+            }
+            assertEquals(Collections.emptyList(), reader.findTitle("missing"));
+        }
+    }
+
+    public void testEmpty() throws IOException {
+        write(0);
+        try (ChunkedSplitFile.Reader reader = new ChunkedSplitFile.Reader(file)) {
+            assertEquals(0, reader.getChunkCount());
+            assertEquals(-1, reader.openAll().read());
+        }
+    }
+
+    public void testNotChunked() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[100]);
+        }
+        try {
+            new ChunkedSplitFile.Reader(file).close();
+            fail("read a file of zeros");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    // Shorter than the header and trailer, also the magic at both ends
+    public void testShort() throws IOException {
+        for (final int length : new int[] { 0, 1, 8, 11, 12, 19 }) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(0);
+                for (int i = 0; i < length; i += 4) {
+                    raf.writeInt(0x44535046);
+                }
+                raf.setLength(length);
+            }
+            try {
+                new ChunkedSplitFile.Reader(file).close();
+                fail("read a file of " + length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    // The channel is closed when the constructor fails.
+    public void testNotChunkedClosed() throws IOException {
+        final File fds = new File("/proc/self/fd");
+        if (!fds.isDirectory()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[100]);
+        }
+        final int open = fds.list().length;
+        for (int i = 0; i < 10; ++i) {
+            try {
+                new ChunkedSplitFile.Reader(file).close();
+                fail("read a file of zeros");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertEquals(open, fds.list().length);
+    }
+
+}
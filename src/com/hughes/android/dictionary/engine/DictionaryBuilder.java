@@ -27,7 +27,7 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.hughes.android.dictionary.parser.DictFileParser;
-import com.hughes.android.dictionary.parser.Parser;
+import com.hughes.android.dictionary.parser.wiktionary.AbstractWiktionaryParser;
 import com.hughes.android.dictionary.parser.wiktionary.EnForeignParser;
 import com.hughes.android.dictionary.parser.wiktionary.EnToTranslationParser;
 import com.hughes.android.dictionary.parser.wiktionary.EnTranslationToTranslationParser;
@@ -51,6 +51,11 @@ public class DictionaryBuilder {
     }
 
     void build() {
+        // The indices are built at the same time, but add their entries to
+        // the dictionary in order.
+        for (final IndexBuilder indexBuilder : indexBuilders) {
+            indexBuilder.prepareRows();
+        }
         for (final IndexBuilder indexBuilder : indexBuilders) {
             indexBuilder.build();
             dictionary.indices.add(indexBuilder.index);
@@ -58,6 +63,19 @@ public class DictionaryBuilder {
     }
 
     public static void main(final String[] args) throws IOException {
+        try {
+            build(args);
+        } catch (ArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds the dictionary described by the arguments (see main), throws
+     * ArgumentException for invalid ones.
+     */
+    static void build(final String[] args) throws IOException {
         System.out.println("Running with arguments:");
         for (final String arg : args) {
             System.out.println(arg);
@@ -110,6 +128,16 @@ public class DictionaryBuilder {
         }
 
         final String printFile = keyValueArgs.remove("print");
+        // Threads for parsing the sections of Wiktionary inputs, the result
+        // does not depend on it.
+        final String parseThreadsString = keyValueArgs.remove("parseThreads");
+        final int parseThreads = parseThreadsString == null ? 1 : Integer.parseInt(parseThreadsString);
+        // Directory for decoded copies of compressed split files, so that
+        // several builds only decode them once.
+        // Only for this build, the builds of DictionaryBuilderBatch might use
+        // different ones.
+        final String splitCache = keyValueArgs.remove("splitCache");
+        final File splitCacheDir = splitCache == null ? null : new File(splitCache);
 
         System.out.println("lang1=" + lang1);
         System.out.println("lang2=" + lang2);
@@ -117,6 +145,8 @@ public class DictionaryBuilder {
         System.out.println("normalizerRules2=" + normalizerRules2);
         System.out.println("dictInfo=" + dictInfo);
         System.out.println("dictOut=" + dictOutFilename);
+        System.out.println("parseThreads=" + parseThreads);
+        System.out.println("splitCache=" + splitCache);
 
         final DictionaryBuilder dictionaryBuilder = new DictionaryBuilder(dictInfo, lang1, lang2, normalizerRules1, normalizerRules2, lang1Stoplist, lang2Stoplist);
 
@@ -139,6 +169,9 @@ public class DictionaryBuilder {
                     pageLimitString = "-1";
                 }
                 final int pageLimit = Integer.parseInt(pageLimitString);
+                // Fraction of the sections of Wiktionary inputs to use, spread over the whole input
+                final String sampleString = keyValueArgs.remove(prefix + "Sample");
+                final double sample = sampleString == null ? 1.0 : Double.parseDouble(sampleString);
 
                 final EntrySource entrySource = new EntrySource(dictionaryBuilder.dictionary.sources.size(), inputName, 0);
                 System.out.println();
@@ -162,7 +195,7 @@ public class DictionaryBuilder {
                         if (enIndex < 0 || enIndex >= 2) {
                             fatalError("Must be 1 or 2: " + prefix + "EnIndex");
                         }
-                        final Parser parser = switch (type) {
+                        final AbstractWiktionaryParser parser = switch (type) {
                             case "EnToTranslation" ->
                                     new EnToTranslationParser(dictionaryBuilder.indexBuilders.get(enIndex), dictionaryBuilder.indexBuilders.get(1 - enIndex),
                                             langPattern, langCodePattern, enIndex != 0);
@@ -177,7 +210,8 @@ public class DictionaryBuilder {
                                 yield null;
                             }
                         };
-                        parser.parse(file, entrySource, pageLimit);
+                        parser.splitCache = splitCacheDir;
+                        parser.parseParallel(file, entrySource, pageLimit, sample, parseThreads);
                     }
                     case EnTranslationToTranslationParser.NAME -> {
                         final String code1 = keyValueArgs.remove(prefix + "LangPattern1");
@@ -188,7 +222,9 @@ public class DictionaryBuilder {
                         }
                         final Pattern codePattern1 = Pattern.compile(code1, Pattern.CASE_INSENSITIVE);
                         final Pattern codePattern2 = Pattern.compile(code2, Pattern.CASE_INSENSITIVE);
-                        new EnTranslationToTranslationParser(dictionaryBuilder.indexBuilders, new Pattern[]{codePattern1, codePattern2}).parse(file, entrySource, pageLimit);
+                        final EnTranslationToTranslationParser parser = new EnTranslationToTranslationParser(dictionaryBuilder.indexBuilders, new Pattern[]{codePattern1, codePattern2});
+                        parser.splitCache = splitCacheDir;
+                        parser.parseParallel(file, entrySource, pageLimit, sample, parseThreads);
                     }
                     case WholeSectionToHtmlParser.NAME -> {
                         final int titleIndex = Integer.parseInt(keyValueArgs.remove(prefix + "TitleIndex")) - 1;
@@ -196,7 +232,9 @@ public class DictionaryBuilder {
                         final String webUrlTemplate = keyValueArgs.remove(prefix + "WebUrlTemplate");
                         String skipLang = keyValueArgs.remove(prefix + "SkipLang");
                         if (skipLang == null) skipLang = "";
-                        new WholeSectionToHtmlParser(dictionaryBuilder.indexBuilders.get(titleIndex), null, wiktionaryLang, skipLang, webUrlTemplate).parse(file, entrySource, pageLimit);
+                        final WholeSectionToHtmlParser parser = new WholeSectionToHtmlParser(dictionaryBuilder.indexBuilders.get(titleIndex), null, wiktionaryLang, skipLang, webUrlTemplate);
+                        parser.splitCache = splitCacheDir;
+                        parser.parseParallel(file, entrySource, pageLimit, sample, parseThreads);
                     }
                     case null, default -> fatalError("Invalid or missing input format: " + inputFormat);
                 }
@@ -223,17 +261,19 @@ public class DictionaryBuilder {
         dictOut.close();
 
         if (!keyValueArgs.isEmpty()) {
-            System.err.println("WARNING: couldn't parse arguments: " + keyValueArgs);
-            System.exit(1);
+            throw new ArgumentException("WARNING: couldn't parse arguments: " + keyValueArgs);
         }
 
     }
 
-    private static void fatalError(String string) {
-        System.err.println(string);
-
+    static final class ArgumentException extends RuntimeException {
+        ArgumentException(final String message) {
+            super(message);
+        }
+    }
 
-        System.exit(1);
+    private static void fatalError(String string) {
+        throw new ArgumentException(string);
     }
 
 }
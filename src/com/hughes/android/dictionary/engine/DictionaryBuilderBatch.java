@@ -0,0 +1,179 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.hughes.util.Args;
+import com.hughes.util.FileUtil;
+
+/**
+ * Runs many DictionaryBuilder jobs in one JVM, so that class loading, JIT
+ * warm-up and the ICU initialisation are only done once.
+ * The job file has the arguments of one DictionaryBuilder run per line
+ * (quoted as for the shell, empty lines and lines starting with # are
+ * ignored), optionally with --jobMemory=MB to override the estimated
+ * memory use of that job.
+ * Arguments:
+ * --jobs=FILE the job file
+ * --threads=N how many jobs to run at once (default: number of cores)
+ * --memoryBudget=MB memory the running jobs may use together (default:
+ * most of the maximum heap size)
+ * All other --key=value arguments are added to every job that does not set
+ * them itself, e.g. --splitCache=DIR.
+ */
+public final class DictionaryBuilderBatch {
+    // Dictionary, indices and parsers, without the inputs.
+    static final long JOB_BASE_MEMORY = 256L * 1024 * 1024;
+    // Rough ratio of the uncompressed to the compressed split files.
+    static final long COMPRESSION_RATIO = 4;
+
+    static final class Job {
+        final String name;
+        final String[] args;
+        final long memory;
+        long millis = -1;
+        Throwable error = null;
+
+        Job(final String name, final String[] args, final long memory) {
+            this.name = name;
+            this.args = args;
+            this.memory = memory;
+        }
+    }
+
+    private long available;
+
+    private DictionaryBuilderBatch(final long budget) {
+        available = budget;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> keyValueArgs = Args.keyValueArgs(args);
+        final String jobFile = keyValueArgs.remove("jobs");
+        if (jobFile == null) {
+            System.err.println("--jobs= must be specified.");
+            System.exit(1);
+        }
+        final String threadsString = keyValueArgs.remove("threads");
+        final int threads = threadsString == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threadsString);
+        final String budgetString = keyValueArgs.remove("memoryBudget");
+        final long budget = budgetString == null ? Runtime.getRuntime().maxMemory() / 10 * 9 : Long.parseLong(budgetString) * 1024 * 1024;
+
+        final List<Job> jobs = new ArrayList<>();
+        for (final String line : FileUtil.readLines(new File(jobFile))) {
+            if (line.isBlank() || line.trim().startsWith("#")) continue;
+            jobs.add(parseJob(Args.split(line), keyValueArgs));
+        }
+        System.out.println("Running " + jobs.size() + " jobs, " + threads + " at once, memory budget " + budget / (1024 * 1024) + " MB");
+
+        final long start = System.currentTimeMillis();
+        new DictionaryBuilderBatch(budget).run(jobs, threads);
+        final long millis = System.currentTimeMillis() - start;
+
+        System.out.println("\nJob timings:");
+        int failed = 0;
+        for (final Job job : jobs) {
+            final String status = job.error == null ? "ok" : "FAILED: " + job.error;
+            System.out.printf("%8.1f s %6d MB  %s  %s%n", job.millis / 1000.0, job.memory / (1024 * 1024), job.name, status);
+            if (job.error != null) ++failed;
+        }
+        System.out.printf("%8.1f s total, %d of %d jobs failed%n", millis / 1000.0, failed, jobs.size());
+        if (failed > 0) System.exit(1);
+    }
+
+    static Job parseJob(final List<String> jobArgs, final Map<String, String> defaults) {
+        final Map<String, String> keyValueArgs = Args.keyValueArgs(jobArgs.toArray(new String[0]));
+        final List<String> args = new ArrayList<>();
+        final String jobMemory = keyValueArgs.get("jobMemory");
+        for (final String arg : jobArgs) {
+            if (!arg.startsWith("--jobMemory=")) args.add(arg);
+        }
+        for (final Map.Entry<String, String> entry : defaults.entrySet()) {
+            if (!keyValueArgs.containsKey(entry.getKey())) args.add("--" + entry.getKey() + "=" + entry.getValue());
+        }
+        final long memory = jobMemory != null ? Long.parseLong(jobMemory) * 1024 * 1024 : estimateMemory(keyValueArgs);
+        final String name = keyValueArgs.getOrDefault("dictOut", String.join(" ", jobArgs));
+        return new Job(name, args.toArray(new String[0]), memory);
+    }
+
+    /** Estimated from the sizes of the inputs, everything of them might end up in the dictionary. */
+    static long estimateMemory(final Map<String, String> keyValueArgs) {
+        long memory = JOB_BASE_MEMORY;
+        for (int i = 0; i < 100; ++i) {
+            final String input = keyValueArgs.get("input" + i);
+            if (input == null) continue;
+            final File file = new File(input);
+            final File compressed = SplitCache.findCompressed(file);
+            final File chunked = new File(input + ChunkedSplitFile.SUFFIX);
+            if (file.exists()) {
+                memory += file.length();
+            } else if (chunked.exists()) {
+                memory += chunked.length() * COMPRESSION_RATIO;
+            } else if (compressed != null) {
+                memory += compressed.length() * COMPRESSION_RATIO;
+            }
+        }
+        return memory;
+    }
+
+    private void run(final List<Job> jobs, final int threads) throws InterruptedException {
+        final long budget = available;
+        final List<Job> sorted = new ArrayList<>(jobs);
+        // Largest first, so that the smaller ones can fill in the gaps at the end.
+        sorted.sort(Comparator.comparingLong((Job job) -> job.memory).reversed());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        for (final Job job : sorted) {
+            final long memory = Math.min(job.memory, budget);
+            acquire(memory);
+            System.out.println("Starting " + job.name + " with about " + job.memory / (1024 * 1024) + " MB");
+            executor.execute(() -> {
+                final long start = System.currentTimeMillis();
+                try {
+                    DictionaryBuilder.build(job.args);
+                } catch (Throwable e) {
+                    // Also assertions and StackOverflowError, the job must not count as ok
+                    job.error = e;
+                    e.printStackTrace();
+                } finally {
+                    job.millis = System.currentTimeMillis() - start;
+                    System.out.println("Finished " + job.name + " in " + job.millis / 1000 + " s");
+                    release(memory);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private synchronized void acquire(final long memory) throws InterruptedException {
+        while (available < memory) {
+            wait();
+        }
+        available -= memory;
+    }
+
+    private synchronized void release(final long memory) {
+        available += memory;
+        notifyAll();
+    }
+}
@@ -15,9 +15,11 @@
 package com.hughes.android.dictionary.engine;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import com.hughes.android.dictionary.engine.Index.IndexEntry;
 import com.hughes.android.dictionary.parser.DictFileParser;
+import com.ibm.icu.text.Transliterator;
 
 public class IndexBuilder {
 
@@ -28,6 +30,9 @@ public class IndexBuilder {
     final Map<String, TokenData> fastTokenToData;
     final SortedMap<FastCompareString, TokenData> tokenToData;
 
+    // Changes collected instead of applied on this thread, see deferChanges.
+    private static final ThreadLocal<List<Runnable>> deferredChanges = new ThreadLocal<>();
+
     IndexBuilder(final DictionaryBuilder dictionaryBuilder, final String shortName, final String longName, final Language language, final String normalizerRules, final Set<String> stoplist, final boolean swapPairEntries) {
         this.dictionaryBuilder = dictionaryBuilder;
         index = new Index(dictionaryBuilder.dictionary, shortName, longName, language, normalizerRules, swapPairEntries, stoplist);
@@ -36,61 +41,102 @@ public class IndexBuilder {
         this.stoplist = stoplist;
     }
 
-    public void build() {
+    // The rows of each token, worked out by prepareRows().
+    private CompletableFuture<List<TokenRows>> preparedRows = null;
+
+    private static final class TokenRows {
+        final TokenData tokenData;
+        final String normalizedToken;
+        // The valid entries without duplicates, in the order in which the
+        // serial build added them to the dictionary.
+        final IndexedEntry[] entries;
+        // Whether each entry gets a row (and not only its HtmlEntry).
+        final boolean[] hasRow;
+
+        TokenRows(final TokenData tokenData, final String normalizedToken, final IndexedEntry[] entries, final boolean[] hasRow) {
+            this.tokenData = tokenData;
+            this.normalizedToken = normalizedToken;
+            this.entries = entries;
+            this.hasRow = hasRow;
+        }
+    }
+
+    /**
+     * Starts working out the rows of the tokens in the background, on the
+     * common fork-join pool in sorted token ranges, so that this can be
+     * done for several indices at the same time. build() waits for it and
+     * adds the rows (and new entries to the dictionary) in order.
+     */
+    void prepareRows() {
+        final List<TokenData> tokens = new ArrayList<>(tokenToData.values());
+        // The normalizer might not be thread-safe, so one for each thread.
+        final ThreadLocal<Transliterator> normalizer = ThreadLocal.withInitial(
+                () -> Transliterator.createFromRules("", index.normalizerRules, Transliterator.FORWARD));
+        preparedRows = CompletableFuture.supplyAsync(() -> tokens.parallelStream()
+                .map(tokenData -> tokenRows(tokenData, normalizer.get()))
+                .filter(Objects::nonNull)
+                .toList());
+    }
+
+    // Same checks as the serial build, without changing anything.
+    private static TokenRows tokenRows(final TokenData tokenData, final Transliterator normalizer) {
         final Set<IndexedEntry> tokenIndexedEntries = new HashSet<>();
+        final List<IndexedEntry> entries = new ArrayList<>();
+        for (final List<IndexedEntry> indexedEntries : tokenData.typeToEntries.values()) {
+            for (final IndexedEntry indexedEntry : indexedEntries) {
+                if (indexedEntry.isValid && tokenIndexedEntries.add(indexedEntry)) {
+                    entries.add(indexedEntry);
+                }
+            }
+        }
+        if (entries.isEmpty() && tokenData.htmlEntries.isEmpty()) {
+            // No token row
+            return null;
+        }
+        final boolean[] hasRow = new boolean[entries.size()];
+        for (int i = 0; i < hasRow.length; ++i) {
+            hasRow[i] = !tokenData.htmlEntries.contains(entries.get(i).entry);
+        }
+        return new TokenRows(tokenData, normalizer.transliterate(tokenData.token), entries.toArray(new IndexedEntry[0]), hasRow);
+    }
+
+    public void build() {
+        if (preparedRows == null) {
+            prepareRows();
+        }
+        final List<TokenRows> tokens = preparedRows.join();
+        preparedRows = null;
         final List<RowBase> rows = index.rows;
         index.mainTokenCount = 0;
-        for (final TokenData tokenData : tokenToData.values()) {
-            tokenIndexedEntries.clear();
+        for (final TokenRows tokenRows : tokens) {
+            final TokenData tokenData = tokenRows.tokenData;
             final int indexIndex = index.sortedIndexEntries.size();
             final int startRow = rows.size();
 
-            TokenRow tokenRow = null;
-            if (!tokenData.htmlEntries.isEmpty()) {
-                tokenRow = new TokenRow(indexIndex, rows.size(), index, tokenData.hasMainEntry);
-                rows.add(tokenRow);
-            }
-
-//    System.out.println("Added TokenRow: " + rows.get(rows.size() - 1));
+            final TokenRow tokenRow = new TokenRow(indexIndex, rows.size(), index, tokenData.hasMainEntry);
+            rows.add(tokenRow);
 
             int numRows = 0;  // off by one--doesn't count the token row!
-//      System.out.println("TOKEN: " + tokenData.token);
-            for (final Map.Entry<EntryTypeName, List<IndexedEntry>> typeToIndexedEntries : tokenData.typeToEntries.entrySet()) {
-                for (final IndexedEntry indexedEntry : typeToIndexedEntries.getValue()) {
-                    if (!indexedEntry.isValid) {
-                        continue;
-                    }
-
-                    if (tokenRow == null) {
-                        tokenRow = new TokenRow(indexIndex, rows.size(), index, tokenData.hasMainEntry);
-                        rows.add(tokenRow);
-                    }
-
-                    if (indexedEntry.entry.index() == -1) {
-                        indexedEntry.entry.addToDictionary(dictionaryBuilder.dictionary);
-                        assert indexedEntry.entry.index() >= 0;
-                    }
-                    if (tokenIndexedEntries.add(indexedEntry) && !tokenData.htmlEntries.contains(indexedEntry.entry)) {
-                        rows.add(indexedEntry.entry.CreateRow(rows.size(), index));
-                        ++indexedEntry.entry.entrySource.numEntries;
-                        ++numRows;
-
-//            System.out.print("  " + typeToEntry.getKey() + ": ");
-                        //          rows.get(rows.size() - 1).print(System.out);
-//            System.out.println();
-                    }
+            for (int i = 0; i < tokenRows.entries.length; ++i) {
+                final IndexedEntry indexedEntry = tokenRows.entries[i];
+                if (indexedEntry.entry.index() == -1) {
+                    indexedEntry.entry.addToDictionary(dictionaryBuilder.dictionary);
+                    assert indexedEntry.entry.index() >= 0;
                 }
-            }
-
-            if (tokenRow != null) {
-                if (tokenRow.hasMainEntry) {
-                    index.mainTokenCount++;
+                if (tokenRows.hasRow[i]) {
+                    rows.add(indexedEntry.entry.CreateRow(rows.size(), index));
+                    ++indexedEntry.entry.entrySource.numEntries;
+                    ++numRows;
                 }
+            }
 
-                final Index.IndexEntry indexEntry = new Index.IndexEntry(index, tokenData.token, index
-                        .normalizer().transliterate(tokenData.token), startRow, numRows, tokenData.htmlEntries);
-                index.sortedIndexEntries.add(indexEntry);
+            if (tokenRow.hasMainEntry) {
+                index.mainTokenCount++;
             }
+
+            final Index.IndexEntry indexEntry = new Index.IndexEntry(index, tokenData.token, tokenRows.normalizedToken,
+                    startRow, numRows, tokenData.htmlEntries);
+            index.sortedIndexEntries.add(indexEntry);
         }
 
         final List<IndexEntry> entriesSortedByNumRows = new ArrayList<>(index.sortedIndexEntries);
@@ -116,7 +162,36 @@ public class IndexBuilder {
         }
     }
 
+    /**
+     * Until called with null, the changes of this thread to any IndexBuilder
+     * (and those passed to inRecordOrder) are added to changes instead of
+     * applied. This allows parsing sections on several threads and applying
+     * the results in the order of the input, so that the dictionary is the
+     * same as when parsing them one after the other.
+     */
+    public static void deferChanges(final List<Runnable> changes) {
+        if (changes == null) {
+            deferredChanges.remove();
+        } else {
+            deferredChanges.set(changes);
+        }
+    }
+
+    /**
+     * Runs change now, or if the changes of this thread are deferred adds it
+     * to them. For changes that depend on the order of the sections.
+     */
+    public static void inRecordOrder(final Runnable change) {
+        final List<Runnable> changes = deferredChanges.get();
+        if (changes == null) {
+            change.run();
+        } else {
+            changes.add(change);
+        }
+    }
+
     public TokenData getOrCreateTokenData(final String token) {
+        assert deferredChanges.get() == null : "getOrCreateTokenData with deferred changes, use inRecordOrder";
         TokenData tokenData = fastTokenToData.get(token);
         if (tokenData != null) return tokenData;
         tokenData = new TokenData(token);
@@ -149,11 +224,13 @@ public class IndexBuilder {
             System.out.println("asdfasdf");
         }
         assert indexedEntry != null;
-        for (final String token : tokens) {
-            if (entryTypeName.overridesStopList || !stoplist.contains(token)) {
-                getOrCreateEntries(token, entryTypeName).add(indexedEntry);
+        inRecordOrder(() -> {
+            for (final String token : tokens) {
+                if (entryTypeName.overridesStopList || !stoplist.contains(token)) {
+                    getOrCreateEntries(token, entryTypeName).add(indexedEntry);
+                }
             }
-        }
+        });
     }
 
     public void addEntryWithString(final IndexedEntry indexedEntry, final String untokenizedString,
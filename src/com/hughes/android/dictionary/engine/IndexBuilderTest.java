@@ -0,0 +1,190 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class IndexBuilderTest extends TestCase {
+
+    private static final String[] WORDS = {
+        "Haus", "haus", "Häuser", "HAUS", "Maus", "der", "die", "das", "gehen", "ging", "gegangen",
+        "house", "mouse", "the", "go", "went", "gone", "Straße", "strasse", "zoo", "Zoo", "über",
+    };
+
+    private static final EntryTypeName[] TYPES = {
+        EntryTypeName.WIKTIONARY_TITLE_MULTI, EntryTypeName.WIKTIONARY_TRANSLATION_OTHER_TEXT,
+        EntryTypeName.SYNONYM_MULTI, EntryTypeName.WIKTIONARY_EXAMPLE, EntryTypeName.WIKTIONARY_ENGLISH_DEF,
+    };
+
+    private static String text(final Random random) {
+        final StringBuilder text = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        for (int i = random.nextInt(4); i > 0; --i) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Pair entries (some of them not valid, some indexed several times for
+     * the same token) and html entries (some also indexed as words), the
+     * same ones for the same seed.
+     */
+    private static DictionaryBuilder dictionary(final long seed) {
+        final DictionaryBuilder db = new DictionaryBuilder("", Language.de, Language.en,
+                Language.de.getDefaultNormalizerRules(), Language.en.getDefaultNormalizerRules(),
+                Collections.singleton("der"), Collections.singleton("the"));
+        final EntrySource pairSource = new EntrySource(0, "pairs", 0);
+        final EntrySource htmlSource = new EntrySource(1, "html", 0);
+        db.dictionary.sources.add(pairSource);
+        db.dictionary.sources.add(htmlSource);
+        final Random random = new Random(seed);
+        for (int i = 0; i < 2000; ++i) {
+            if (random.nextInt(5) == 0) {
+                final String title = WORDS[random.nextInt(WORDS.length)];
+                final HtmlEntry htmlEntry = new HtmlEntry(htmlSource, title);
+                htmlEntry.html = "<p>" + title + " " + i + "</p>";
+                final IndexedEntry indexedEntry = new IndexedEntry(htmlEntry);
+                indexedEntry.isValid = true;
+                final IndexBuilder.TokenData tokenData = db.indexBuilders.get(0).getOrCreateTokenData(title);
+                tokenData.hasMainEntry = true;
+                htmlEntry.addToDictionary(db.dictionary);
+                tokenData.htmlEntries.add(htmlEntry);
+                if (random.nextBoolean()) {
+                    db.indexBuilders.get(0).addEntryWithString(indexedEntry, title, EntryTypeName.WIKTIONARY_TITLE_MULTI);
+                }
+                continue;
+            }
+            final PairEntry pairEntry = new PairEntry(pairSource);
+            final IndexedEntry indexedEntry = new IndexedEntry(pairEntry);
+            indexedEntry.isValid = random.nextInt(10) != 0;
+            final String de = text(random);
+            final String en = text(random);
+            pairEntry.pairs.add(new PairEntry.Pair(de, en));
+            db.indexBuilders.get(0).addEntryWithString(indexedEntry, de, TYPES[random.nextInt(TYPES.length)]);
+            db.indexBuilders.get(1).addEntryWithString(indexedEntry, en, TYPES[random.nextInt(TYPES.length)]);
+            if (random.nextInt(4) == 0) {
+                // Another type for the same tokens
+                db.indexBuilders.get(0).addEntryWithString(indexedEntry, de, TYPES[random.nextInt(TYPES.length)]);
+            }
+        }
+        return db;
+    }
+
+    // The serial IndexBuilder.build() from before it was split into two phases.
+    private static void serialBuild(final IndexBuilder indexBuilder) {
+        final Index index = indexBuilder.index;
+        final Set<IndexedEntry> tokenIndexedEntries = new HashSet<>();
+        final List<RowBase> rows = index.rows;
+        index.mainTokenCount = 0;
+        for (final IndexBuilder.TokenData tokenData : indexBuilder.tokenToData.values()) {
+            tokenIndexedEntries.clear();
+            final int indexIndex = index.sortedIndexEntries.size();
+            final int startRow = rows.size();
+
+            TokenRow tokenRow = null;
+            if (!tokenData.htmlEntries.isEmpty()) {
+                tokenRow = new TokenRow(indexIndex, rows.size(), index, tokenData.hasMainEntry);
+                rows.add(tokenRow);
+            }
+
+            int numRows = 0;
+            for (final Map.Entry<EntryTypeName, List<IndexedEntry>> typeToIndexedEntries : tokenData.typeToEntries.entrySet()) {
+                for (final IndexedEntry indexedEntry : typeToIndexedEntries.getValue()) {
+                    if (!indexedEntry.isValid) {
+                        continue;
+                    }
+
+                    if (tokenRow == null) {
+                        tokenRow = new TokenRow(indexIndex, rows.size(), index, tokenData.hasMainEntry);
+                        rows.add(tokenRow);
+                    }
+
+                    if (indexedEntry.entry.index() == -1) {
+                        indexedEntry.entry.addToDictionary(indexBuilder.dictionaryBuilder.dictionary);
+                        assert indexedEntry.entry.index() >= 0;
+                    }
+                    if (tokenIndexedEntries.add(indexedEntry) && !tokenData.htmlEntries.contains(indexedEntry.entry)) {
+                        rows.add(indexedEntry.entry.CreateRow(rows.size(), index));
+                        ++indexedEntry.entry.entrySource.numEntries;
+                        ++numRows;
+                    }
+                }
+            }
+
+            if (tokenRow != null) {
+                if (tokenRow.hasMainEntry) {
+                    index.mainTokenCount++;
+                }
+
+                final Index.IndexEntry indexEntry = new Index.IndexEntry(index, tokenData.token, index
+                        .normalizer().transliterate(tokenData.token), startRow, numRows, tokenData.htmlEntries);
+                index.sortedIndexEntries.add(indexEntry);
+            }
+        }
+    }
+
+    private static String print(final DictionaryBuilder db) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PrintStream print = new PrintStream(out, false, StandardCharsets.UTF_8)) {
+            db.dictionary.print(print);
+            for (final Index index : db.dictionary.indices) {
+                print.println(index.shortName + ": " + index.rows.size() + " rows, " + index.mainTokenCount + " main tokens");
+            }
+            for (final EntrySource source : db.dictionary.sources) {
+                print.println(source.getName() + ": " + source.getNumEntries() + " entries");
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    public void testSameAsSerial() {
+        for (final long seed : new long[] { 1, 2, 3 }) {
+            final DictionaryBuilder parallel = dictionary(seed);
+            parallel.build();
+
+            final DictionaryBuilder serial = dictionary(seed);
+            for (final IndexBuilder indexBuilder : serial.indexBuilders) {
+                serialBuild(indexBuilder);
+                serial.dictionary.indices.add(indexBuilder.index);
+            }
+
+            assertFalse(serial.dictionary.indices.get(0).rows.isEmpty());
+            assertEquals("seed " + seed, print(serial), print(parallel));
+        }
+    }
+
+    // DictionaryBuilder prepares all indices before building the first one.
+    public void testPrepareEachOnBuild() {
+        final DictionaryBuilder onBuild = dictionary(4);
+        for (final IndexBuilder indexBuilder : onBuild.indexBuilders) {
+            indexBuilder.build();
+            onBuild.dictionary.indices.add(indexBuilder.index);
+        }
+        final DictionaryBuilder all = dictionary(4);
+        all.build();
+        assertEquals(print(onBuild), print(all));
+    }
+
+}
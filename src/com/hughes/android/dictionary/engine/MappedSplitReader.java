@@ -0,0 +1,149 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an uncompressed split file (see WiktionarySplitter) through a
+ * memory mapping, decoding the strings directly from it without copying
+ * the records into byte arrays first.
+ * Files larger than WINDOW_SIZE are mapped in parts.
+ */
+public final class MappedSplitReader implements Closeable {
+    static long WINDOW_SIZE = 1L << 30;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+    // File position of the next record, or of the text of the current one.
+    private long pos = 0;
+
+    private String title;
+    private String heading;
+    private int textLength = -1;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(64 * 1024);
+
+    public MappedSplitReader(final File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * Moves to the next record (skipping the text of the current one if it
+     * was not read), returns false at the end of the file.
+     */
+    public boolean next() throws IOException {
+        if (textLength >= 0) {
+            pos += textLength;
+            textLength = -1;
+        }
+        if (pos == size) return false;
+        title = readUTF();
+        heading = readUTF();
+        textLength = map(4).getInt(0);
+        if (textLength < 0) throw new IOException("Invalid record length in " + file);
+        pos += 4;
+        return true;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getHeading() {
+        return heading;
+    }
+
+    /** The text of the current record, can only be read once. */
+    public String readText() throws IOException {
+        if (textLength < 0) throw new IllegalStateException("No record or text already read");
+        final ByteBuffer bytes = map(textLength);
+        // UTF-8 never has fewer bytes than chars
+        if (chars.capacity() < textLength) {
+            chars = CharBuffer.allocate(Math.max(textLength, 2 * chars.capacity()));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        pos += textLength;
+        textLength = -1;
+        return new String(chars.array(), 0, chars.position());
+    }
+
+    /**
+     * Returns a buffer with (at least) length bytes from pos on, starting
+     * at its position 0, mapping a new window if necessary.
+     */
+    private ByteBuffer map(final int length) throws IOException {
+        if (pos + length > size) throw new EOFException("Unexpected end of " + file);
+        if (window == null || pos < windowStart || pos + length > windowStart + window.capacity()) {
+            windowStart = pos;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size - pos, Math.max(WINDOW_SIZE, length)));
+        }
+        return window.slice((int) (pos - windowStart), length);
+    }
+
+    // Same as DataInputStream.readUTF: modified UTF-8 has no 4 byte
+    // sequences, only 1 to 3 bytes per char.
+    private String readUTF() throws IOException {
+        ByteBuffer buffer = map(2);
+        final int length = buffer.getShort(0) & 0xffff;
+        pos += 2;
+        buffer = map(length);
+        final char[] result = new char[length];
+        int count = 0;
+        for (int i = 0; i < length; ) {
+            final int c = buffer.get(i++) & 0xff;
+            if (c < 0x80) {
+                result[count++] = (char) c;
+            } else if ((c & 0xe0) == 0xc0 && i < length) {
+                result[count++] = (char) (((c & 0x1f) << 6) | (buffer.get(i++) & 0x3f));
+            } else if ((c & 0xf0) == 0xe0 && i + 1 < length) {
+                result[count++] = (char) (((c & 0x0f) << 12) | ((buffer.get(i++) & 0x3f) << 6) | (buffer.get(i++) & 0x3f));
+            } else {
+                throw new UTFDataFormatException("Malformed string in " + file + " at " + (pos + i - 1));
+            }
+        }
+        pos += length;
+        return new String(result, 0, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
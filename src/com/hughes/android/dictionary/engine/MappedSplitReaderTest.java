@@ -0,0 +1,165 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MappedSplitReaderTest extends TestCase {
+
+    private File file;
+    private long windowSize;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("MappedSplitReaderTest", ".data");
+        windowSize = MappedSplitReader.WINDOW_SIZE;
+    }
+
+    @Override
+    protected void tearDown() {
+        MappedSplitReader.WINDOW_SIZE = windowSize;
+        file.delete();
+    }
+
+    private static final String[] WORDS = { "a", "Wort", "ä", "€", "\u0000", "😀", "日本語", " ", "\n" };
+
+    private static String text(final Random random, final int maxWords) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(maxWords + 1); i > 0; --i) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    // The format WiktionarySplitter writes, some texts with invalid UTF-8
+    private void write(final int records) throws IOException {
+        final Random random = new Random(records);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (int i = 0; i < records; ++i) {
+                out.writeUTF(text(random, 20));
+                out.writeUTF(text(random, 5));
+                byte[] text = text(random, 300).getBytes(StandardCharsets.UTF_8);
+                if (i % 10 == 3 && text.length > 2) {
+                    text[text.length / 2] = (byte) 0xff;
+                    text[text.length - 1] = (byte) 0xe2;
+                }
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        }
+    }
+
+    // What parse() does without the mapping
+    private List<String> readStream(final boolean withText) throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final String title;
+                try {
+                    title = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                final String heading = in.readUTF();
+                final byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                records.add(title + "|" + heading + (withText ? "|" + new String(text, StandardCharsets.UTF_8) : ""));
+            }
+        }
+        return records;
+    }
+
+    private List<String> readMapped(final boolean withText) throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (MappedSplitReader reader = new MappedSplitReader(file)) {
+            while (reader.next()) {
+                records.add(reader.getTitle() + "|" + reader.getHeading() + (withText ? "|" + reader.readText() : ""));
+            }
+        }
+        return records;
+    }
+
+    public void testSameAsStream() throws IOException {
+        for (final int records : new int[] { 0, 1, 1000 }) {
+            write(records);
+            final List<String> expected = readStream(true);
+            assertEquals(records, expected.size());
+            assertEquals(expected, readMapped(true));
+            // Skipping the texts
+            assertEquals(readStream(false), readMapped(false));
+        }
+    }
+
+    // With small windows most records (and many of their strings) cross
+    // the end of a window, the texts are often longer than a whole window.
+    public void testSmallWindows() throws IOException {
+        write(1000);
+        final List<String> expected = readStream(true);
+        for (final long size : new long[] { 1, 2, 3, 7, 100, 1000, 4096 }) {
+            MappedSplitReader.WINDOW_SIZE = size;
+            assertEquals("window size " + size, expected, readMapped(true));
+            assertEquals("window size " + size, readStream(false), readMapped(false));
+        }
+    }
+
+    public void testTruncated() throws IOException {
+        write(10);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        try {
+            readMapped(true);
+            fail("no exception for a truncated file");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    public void testTextOnlyOnce() throws IOException {
+        write(2);
+        try (MappedSplitReader reader = new MappedSplitReader(file)) {
+            try {
+                reader.readText();
+                fail("text before next()");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertTrue(reader.next());
+            reader.readText();
+            try {
+                reader.readText();
+                fail("text read twice");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Decodes bzip2 data on several threads.
+ * The blocks of a bzip2 stream are independent, so this scans for the
+ * (not byte-aligned) block markers, turns every block into a stand-alone
+ * single-block stream and decodes those on a thread pool.
+ * The output is returned in the original order.
+ * Concatenated streams (e.g. from pbzip2 or multistream dumps) are supported.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // Decoder state for 900k blocks (BZh9), mostly the inverse BWT table.
+    static final long DECODER_MEMORY = 5L * 1024 * 1024;
+    // A compressed block waiting to be decoded or merged and its output.
+    static final long PENDING_BLOCK_MEMORY = 2L * 1024 * 1024;
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = 0xffffffffffffL;
+    // Compressed bzip2 blocks are at most around 1 MB, if a block still fails
+    // to decode once it is larger than this, the input is broken.
+    private static final long MAX_MERGED_BITS = 8L * 4 * 1024 * 1024;
+
+    /**
+     * Uses the parallel decoder for bzip2 input if there is more than one core,
+     * otherwise the same as CompressorStreamFactory.createCompressorInputStream.
+     */
+    public static InputStream createCompressorInputStream(final InputStream compressedIn) throws CompressorException, IOException {
+        return createCompressorInputStream(compressedIn, THREADS);
+    }
+
+    /** Like createCompressorInputStream(InputStream), with at most the given number of decoder threads. */
+    public static InputStream createCompressorInputStream(final InputStream compressedIn, final int threads) throws CompressorException, IOException {
+        if (threads > 1 && CompressorStreamFactory.BZIP2.equals(CompressorStreamFactory.detect(compressedIn))) {
+            return new ParallelBZip2InputStream(compressedIn, threads);
+        }
+        return new CompressorStreamFactory().createCompressorInputStream(compressedIn);
+    }
+
+    /**
+     * Estimated memory use of decoding bzip2 input with the given number of
+     * threads: a decoder for each and up to 2 pending blocks per thread (see
+     * maxPending), plus the scan buffer. 1 thread is the serial decoder.
+     */
+    static long memoryEstimate(final int threads) {
+        if (threads <= 1) return DECODER_MEMORY;
+        return threads * (DECODER_MEMORY + 2 * PENDING_BLOCK_MEMORY) + 2L * 1024 * 1024;
+    }
+
+    /**
+     * Part of the compressed data starting at a block or end of stream marker,
+     * copied so that it starts at bit 0.
+     */
+    static final class Segment {
+        final byte[] bits;
+        final long bitCount;
+        final boolean isBlock;
+
+        Segment(final byte[] bits, final long bitCount, final boolean isBlock) {
+            this.bits = bits;
+            this.bitCount = bitCount;
+            this.isBlock = isBlock;
+        }
+    }
+
+    static final class PendingSegment {
+        final Segment segment;
+        // null for the end of stream segments, they only need to be decoded when merging.
+        final Future<byte[]> result;
+
+        PendingSegment(final Segment segment, final Future<byte[]> result) {
+            this.segment = segment;
+            this.result = result;
+        }
+    }
+
+    private final InputStream in;
+    private final ExecutorService workers;
+    private final int maxPending;
+    private final ArrayDeque<PendingSegment> pending = new ArrayDeque<>();
+
+    // Compressed data not yet handed out as a Segment, all positions are in bits.
+    private byte[] buf = new byte[2 * 1024 * 1024];
+    private int bufLen;
+    private long scanPos = 0;
+    private long window = 0;
+    private long segmentStart = -1;
+    private boolean segmentIsBlock = false;
+    private boolean inputEof = false;
+
+    private byte[] current = new byte[0];
+    private int currentPos = 0;
+
+    public ParallelBZip2InputStream(final InputStream in, final int threads) throws IOException {
+        this.in = in;
+        bufLen = in.readNBytes(buf, 0, 4);
+        if (bufLen != 4 || buf[0] != 'B' || buf[1] != 'Z' || buf[2] != 'h' || buf[3] < '1' || buf[3] > '9') {
+            throw new IOException("Not a bzip2 stream");
+        }
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "bzip2 decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        maxPending = 2 * threads;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (currentPos == current.length) {
+            if (!nextBlock()) return -1;
+        }
+        return current[currentPos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) return 0;
+        while (currentPos == current.length) {
+            if (!nextBlock()) return -1;
+        }
+        final int n = Math.min(len, current.length - currentPos);
+        System.arraycopy(current, currentPos, b, off, n);
+        currentPos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        PendingSegment next;
+        do {
+            fillPending();
+            next = pending.poll();
+            if (next == null) {
+                workers.shutdown();
+                return false;
+            }
+        } while (next.result == null);
+
+        final List<Segment> merged = new ArrayList<>();
+        merged.add(next.segment);
+        long mergedBits = next.segment.bitCount;
+        Throwable failure;
+        try {
+            current = next.result.get();
+            currentPos = 0;
+            return true;
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        // Most likely a block marker was found by chance inside the compressed
+        // data, retry with the following segments appended.
+        while (mergedBits < MAX_MERGED_BITS) {
+            fillPending();
+            next = pending.poll();
+            if (next == null) break;
+            if (next.result != null) next.result.cancel(false);
+            merged.add(next.segment);
+            mergedBits += next.segment.bitCount;
+            try {
+                current = decode(merged);
+                currentPos = 0;
+                return true;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw new IOException("Failed to decode bzip2 block", failure);
+    }
+
+    private void fillPending() throws IOException {
+        Segment segment;
+        while (pending.size() < maxPending && (segment = nextSegment()) != null) {
+            final List<Segment> single = List.of(segment);
+            pending.add(new PendingSegment(segment, segment.isBlock ? workers.submit(() -> decode(single)) : null));
+        }
+    }
+
+    private Segment nextSegment() throws IOException {
+        while (true) {
+            final long end = bufLen * 8L;
+            while (scanPos < end) {
+                final int bit = (buf[(int) (scanPos >>> 3)] >>> (7 - (int) (scanPos & 7))) & 1;
+                window = ((window << 1) | bit) & MAGIC_MASK;
+                ++scanPos;
+                if (window == BLOCK_MAGIC || window == EOS_MAGIC) {
+                    final long magicStart = scanPos - 48;
+                    final Segment segment = segmentStart >= 0 ? copyBits(segmentStart, magicStart, segmentIsBlock) : null;
+                    segmentStart = magicStart;
+                    segmentIsBlock = window == BLOCK_MAGIC;
+                    if (segment != null) return segment;
+                }
+            }
+            if (inputEof) {
+                if (segmentStart < 0) return null;
+                // Normally just the end of stream marker, otherwise the input
+                // is truncated and decoding the segment will fail.
+                final Segment segment = copyBits(segmentStart, end, segmentIsBlock);
+                segmentStart = -1;
+                return segment;
+            }
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        final int drop = (int) ((segmentStart >= 0 ? segmentStart : scanPos) >>> 3);
+        if (drop > 0) {
+            System.arraycopy(buf, drop, buf, 0, bufLen - drop);
+            bufLen -= drop;
+            scanPos -= drop * 8L;
+            if (segmentStart >= 0) segmentStart -= drop * 8L;
+        }
+        if (bufLen == buf.length) {
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+        }
+        final int read = in.read(buf, bufLen, buf.length - bufLen);
+        if (read < 0) {
+            inputEof = true;
+        } else {
+            bufLen += read;
+        }
+    }
+
+    private Segment copyBits(final long from, final long to, final boolean isBlock) {
+        final long bitCount = to - from;
+        final byte[] bits = new byte[(int) ((bitCount + 7) >>> 3)];
+        final int shift = (int) (from & 7);
+        int src = (int) (from >>> 3);
+        if (shift == 0) {
+            System.arraycopy(buf, src, bits, 0, bits.length);
+        } else {
+            for (int i = 0; i < bits.length; ++i, ++src) {
+                int v = (buf[src] & 0xff) << shift;
+                if (src + 1 < bufLen) v |= (buf[src + 1] & 0xff) >>> (8 - shift);
+                bits[i] = (byte) v;
+            }
+        }
+        return new Segment(bits, bitCount, isBlock);
+    }
+
+    /**
+     * Builds a stand-alone stream from the segments, starting with a block.
+     * The combined CRC of a single-block stream is just the block CRC.
+     */
+    static byte[] decode(final List<Segment> segments) throws IOException {
+        final BitWriter out = new BitWriter();
+        out.write('B', 8);
+        out.write('Z', 8);
+        out.write('h', 8);
+        out.write('9', 8);
+        for (final Segment segment : segments) {
+            final int fullBytes = (int) (segment.bitCount >>> 3);
+            for (int i = 0; i < fullBytes; ++i) {
+                out.write(segment.bits[i] & 0xff, 8);
+            }
+            final int rest = (int) (segment.bitCount & 7);
+            if (rest != 0) {
+                out.write((segment.bits[fullBytes] & 0xff) >>> (8 - rest), rest);
+            }
+        }
+        final byte[] first = segments.get(0).bits;
+        final int blockCrc = ((first[6] & 0xff) << 24) | ((first[7] & 0xff) << 16) | ((first[8] & 0xff) << 8) | (first[9] & 0xff);
+        out.write((int) (EOS_MAGIC >>> 24), 24);
+        out.write((int) (EOS_MAGIC & 0xffffff), 24);
+        out.write(blockCrc >>> 16, 16);
+        out.write(blockCrc & 0xffff, 16);
+        try (InputStream decoder = new BZip2CompressorInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            return decoder.readAllBytes();
+        }
+    }
+
+    static final class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+        private long acc = 0;
+        private int accBits = 0;
+
+        void write(final int value, final int count) {
+            acc = (acc << count) | (value & ((1L << count) - 1));
+            accBits += count;
+            while (accBits >= 8) {
+                accBits -= 8;
+                out.write((int) (acc >>> accBits));
+            }
+        }
+
+        byte[] toByteArray() {
+            if (accBits > 0) {
+                out.write((int) (acc << (8 - accBits)));
+                accBits = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import junit.framework.TestCase;
+
+public class ParallelBZip2InputStreamTest extends TestCase {
+
+    private static byte[] text(final long seed, final int size) {
+        final String[] words = { "Wort", "word", "mot", "parola", "palabra", "{{", "}}", "[[", "]]", "==", "\n", "ä", "ß", "日本" };
+        final Random random = new Random(seed);
+        final StringBuilder result = new StringBuilder();
+        while (result.length() < size) {
+            result.append(words[random.nextInt(words.length)]).append(random.nextInt(1000)).append(' ');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Block size 1 (100 kB) so that even small inputs have several blocks.
+    private static byte[] compress(final byte[] data) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(result, 1)) {
+            out.write(data);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            result.writeBytes(part);
+        }
+        return result.toByteArray();
+    }
+
+    private static void assertSameAsSerial(final byte[] expected, final byte[] compressed) throws IOException {
+        final byte[] serial;
+        try (InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+            serial = in.readAllBytes();
+        }
+        assertTrue(Arrays.equals(expected, serial));
+        for (final int threads : new int[] { 1, 3 }) {
+            try (InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), threads)) {
+                assertTrue(Arrays.equals(serial, in.readAllBytes()));
+            }
+            // Also byte by byte, through read()
+            final ByteArrayOutputStream single = new ByteArrayOutputStream();
+            try (InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), threads)) {
+                int b;
+                while ((b = in.read()) != -1) single.write(b);
+            }
+            assertTrue(Arrays.equals(serial, single.toByteArray()));
+        }
+    }
+
+    // Bit offsets of the block markers
+    private static long[] blockStarts(final byte[] compressed) {
+        long[] result = new long[0];
+        long window = 0;
+        for (long bit = 0; bit < compressed.length * 8L; ++bit) {
+            window = ((window << 1) | ((compressed[(int) (bit >>> 3)] >>> (7 - (int) (bit & 7))) & 1)) & 0xffffffffffffL;
+            if (window == 0x314159265359L) {
+                result = Arrays.copyOf(result, result.length + 1);
+                result[result.length - 1] = bit + 1 - 48;
+            }
+        }
+        return result;
+    }
+
+    public void testSingleStream() throws IOException {
+        final byte[] data = text(1, 600000);
+        final byte[] compressed = compress(data);
+        final long[] blocks = blockStarts(compressed);
+        assertTrue(blocks.length > 3);
+        boolean unaligned = false;
+        for (final long start : blocks) {
+            unaligned |= start % 8 != 0;
+        }
+        assertTrue("no block starts inside a byte", unaligned);
+        assertSameAsSerial(data, compressed);
+    }
+
+    public void testConcatenatedStreams() throws IOException {
+        final byte[] first = text(2, 250000);
+        final byte[] second = text(3, 10);
+        final byte[] third = text(4, 150000);
+        assertSameAsSerial(concat(first, second, third),
+                concat(compress(first), compress(second), compress(third)));
+    }
+
+    public void testEmptyStream() throws IOException {
+        assertSameAsSerial(new byte[0], compress(new byte[0]));
+        final byte[] data = text(5, 1000);
+        assertSameAsSerial(data, concat(compress(new byte[0]), compress(data), compress(new byte[0])));
+    }
+
+    public void testTruncated() throws IOException {
+        final byte[] compressed = compress(text(6, 300000));
+        final byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        try (InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(truncated), 2)) {
+            in.readAllBytes();
+            fail("truncated input decoded without error");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import com.hughes.android.dictionary.parser.wiktionary.EnToTranslationParser;
+import com.hughes.android.dictionary.parser.wiktionary.WholeSectionToHtmlParser;
+
+import junit.framework.TestCase;
+
+public class ParseParallelTest extends TestCase {
+
+    private static final String[] EN = { "house", "mouse", "go", "the", "zoo", "over", "street", "run", "green" };
+    private static final String[] DE = { "Haus", "Maus", "gehen", "der", "Zoo", "über", "Straße", "laufen", "grün" };
+
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("ParseParallelTest", ".data");
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    // The format WiktionarySplitter writes, the same titles several times
+    private void write(final int sections) throws IOException {
+        final Random random = new Random(sections);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (int i = 0; i < sections; ++i) {
+                final String title = EN[random.nextInt(EN.length)];
+                final String text = "===Noun===\n"
+                        + "'''" + title + "''' (''plural'' [[" + EN[random.nextInt(EN.length)] + "]]s)\n"
+                        + "# A [[" + EN[random.nextInt(EN.length)] + "]] near the " + EN[random.nextInt(EN.length)] + ".\n"
+                        + "#: ''The " + title + " is green.''\n\n"
+                        + "====Translations====\n"
+                        + "{{trans-top|" + EN[random.nextInt(EN.length)] + "}}\n"
+                        + "* German: {{t+|de|" + DE[random.nextInt(DE.length)] + "|n}}, {{t|de|" + DE[random.nextInt(DE.length)] + "}}\n"
+                        + "* French: {{t|fr|maison}}\n"
+                        + "{{trans-bottom}}\n";
+                out.writeUTF(title);
+                out.writeUTF("==English==");
+                final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private String parse(final int threads) throws IOException {
+        final DictionaryBuilder db = new DictionaryBuilder("", Language.en, Language.de,
+                Language.en.getDefaultNormalizerRules(), Language.de.getDefaultNormalizerRules(),
+                Collections.singleton("the"), Collections.singleton("der"));
+
+        final EntrySource translationSource = new EntrySource(0, "translations", 0);
+        new EnToTranslationParser(db.indexBuilders.get(0), db.indexBuilders.get(1),
+                Pattern.compile("German"), Pattern.compile("de"), false)
+                .parseParallel(file, translationSource, -1, 1.0, threads);
+        db.dictionary.sources.add(translationSource);
+
+        final EntrySource htmlSource = new EntrySource(1, "html", 0);
+        new WholeSectionToHtmlParser(db.indexBuilders.get(0), null, "EN", "", null)
+                .parseParallel(file, htmlSource, -1, 1.0, threads);
+        db.dictionary.sources.add(htmlSource);
+
+        db.build();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PrintStream print = new PrintStream(out, false, StandardCharsets.UTF_8)) {
+            db.dictionary.print(print);
+            for (final EntrySource source : db.dictionary.sources) {
+                print.println(source.getName() + ": " + source.getNumEntries() + " entries");
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    public void testSameAsSerial() throws IOException {
+        write(500);
+        final String serial = parse(1);
+        assertTrue(serial, serial.contains("Haus"));
+        assertEquals(serial, parse(4));
+    }
+
+}
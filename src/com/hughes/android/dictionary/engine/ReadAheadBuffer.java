@@ -16,32 +16,163 @@ package com.hughes.android.dictionary.engine;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
 
-public class ReadAheadBuffer extends PipedInputStream {
+/**
+ * Reads the input on a separate thread, up to size bytes ahead.
+ * The data is passed in a ring of blocks with a single producer (the read
+ * ahead thread) and a single consumer, which only wait (park) when the
+ * ring is full or empty. Exceptions of the input are thrown by the reads
+ * once the data before them is consumed.
+ */
+public class ReadAheadBuffer extends InputStream {
     static int BLOCK_SIZE = 1024 * 1024;
+
+    private final InputStream in;
+    private final byte[][] blocks;
+    // Bytes in each block, -1 for the end of the input.
+    private final int[] lengths;
+    // Counts of blocks filled by the producer and released by the consumer,
+    // block i of the ring is number i % blocks.length.
+    private volatile long filled = 0;
+    private volatile long released = 0;
+    private final Thread producer;
+    private volatile Thread waitingConsumer = null;
+    private volatile boolean closed = false;
+    private volatile Throwable error = null;
+    // Consumer position in the current block.
+    private int pos = 0;
+
     public ReadAheadBuffer(InputStream in, int size) {
-        super(size);
-        assert size >= 2 * BLOCK_SIZE;
+        this.in = in;
+        final int blockSize = Math.max(1, Math.min(BLOCK_SIZE, size / 2));
+        blocks = new byte[Math.max(2, size / blockSize)][blockSize];
+        lengths = new int[blocks.length];
+        producer = new Thread(this::produce, "ReadAheadBuffer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce() {
         try {
-            pipe = new PipedOutputStream(this);
-        } catch (IOException e) {}
-        new Thread(() -> {
-            try {
-                int read;
-                final byte[] buffer = new byte[BLOCK_SIZE];
-                while ((read = in.read(buffer)) > 0)
-                {
-                    pipe.write(buffer, 0, read);
-                    pipe.flush();
+            while (awaitFree()) {
+                final int i = (int) (filled % blocks.length);
+                final byte[] block = blocks[i];
+                int length = 0;
+                int read = 0;
+                while (length < block.length && (read = in.read(block, length, block.length - length)) > 0) {
+                    length += read;
+                }
+                if (length > 0) {
+                    lengths[i] = length;
+                    publish();
                 }
-            } catch (IOException e) {}
-            try {
-                pipe.close();
-            } catch (IOException e) {}
-        }).start();
+                if (read <= 0) break;
+            }
+        } catch (Throwable e) {
+            error = e;
+        }
+        if (awaitFree()) {
+            lengths[(int) (filled % blocks.length)] = -1;
+            publish();
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+    }
+
+    // Returns false if closed.
+    private boolean awaitFree() {
+        while (filled - released == blocks.length && !closed) {
+            LockSupport.park(this);
+        }
+        return !closed;
+    }
+
+    private void publish() {
+        filled = filled + 1;
+        final Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /** Returns the ring index of the block with the next byte, or -1 at the end. */
+    private int current() throws IOException {
+        while (true) {
+            if (closed) throw new IOException("Stream closed");
+            if (released == filled) awaitFilled();
+            final int i = (int) (released % blocks.length);
+            if (lengths[i] < 0) {
+                if (error instanceof IOException) throw (IOException) error;
+                if (error != null) throw new IOException(error);
+                return -1;
+            }
+            if (pos < lengths[i]) return i;
+            pos = 0;
+            released = released + 1;
+            LockSupport.unpark(producer);
+        }
     }
 
-    PipedOutputStream pipe;
+    private void awaitFilled() throws IOException {
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (released == filled) {
+                // Closed by another thread
+                if (closed) throw new IOException("Stream closed");
+                LockSupport.park(this);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int i = current();
+        return i < 0 ? -1 : blocks[i][pos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) return 0;
+        final int i = current();
+        if (i < 0) return -1;
+        final int n = Math.min(len, lengths[i] - pos);
+        System.arraycopy(blocks[i], pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            final int i = current();
+            if (i < 0) break;
+            final int count = (int) Math.min(n - skipped, lengths[i] - pos);
+            pos += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        if (closed || released == filled) return 0;
+        return Math.max(0, lengths[(int) (released % blocks.length)] - pos);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(producer);
+        final Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
 }
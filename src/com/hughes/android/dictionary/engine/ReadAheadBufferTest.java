@@ -0,0 +1,207 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class ReadAheadBufferTest extends TestCase {
+
+    private static byte[] data(final int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    // Gives the data in reads of random size, then fails with error if set.
+    static final class TestInputStream extends InputStream {
+        private final byte[] data;
+        private final Exception error;
+        private final Random random = new Random(0);
+        private int pos = 0;
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        TestInputStream(final byte[] data, final Exception error) {
+            this.data = data;
+            this.error = error;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (pos == data.length) {
+                if (error instanceof IOException) throw (IOException) error;
+                if (error != null) throw (RuntimeException) error;
+                return -1;
+            }
+            final int n = Math.min(1 + random.nextInt(len), data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private static byte[] readAll(final InputStream in, final int chunk) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[chunk];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public void testData() throws IOException {
+        for (final int size : new int[] { 0, 1, 4095, 100000 }) {
+            final byte[] data = data(size);
+            // Small rings, so that the producer has to wait for the consumer
+            for (final int bufferSize : new int[] { 2, 10, 1000, 1024 * 1024 }) {
+                final TestInputStream input = new TestInputStream(data, null);
+                try (ReadAheadBuffer in = new ReadAheadBuffer(input, bufferSize)) {
+                    assertTrue(Arrays.equals(data, readAll(in, 777)));
+                    // Still at the end
+                    assertEquals(-1, in.read());
+                    assertEquals(-1, in.read(new byte[10], 0, 10));
+                    assertEquals(0, in.skip(10));
+                }
+                assertTrue(awaitClosed(input));
+            }
+        }
+    }
+
+    public void testSingleBytesAndSkip() throws IOException {
+        final byte[] data = data(5000);
+        try (ReadAheadBuffer in = new ReadAheadBuffer(new ByteArrayInputStream(data), 100)) {
+            for (int i = 0; i < 1000; ++i) {
+                assertEquals(data[i] & 0xff, in.read());
+            }
+            assertEquals(3000, in.skip(3000));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, 4000, 5000), readAll(in, 13)));
+        }
+    }
+
+    public void testErrorAfterData() throws IOException {
+        final byte[] data = data(10000);
+        final IOException error = new IOException("broken input");
+        try (ReadAheadBuffer in = new ReadAheadBuffer(new TestInputStream(data, error), 100)) {
+            final byte[] buf = new byte[data.length];
+            // All data before the error is still there
+            in.readNBytes(buf, 0, buf.length);
+            assertTrue(Arrays.equals(data, buf));
+            try {
+                in.read();
+                fail("no exception at the end of the data");
+            } catch (IOException e) {
+                assertSame(error, e);
+            }
+            // And stays
+            try {
+                in.read(buf, 0, 10);
+                fail("no exception on the second read");
+            } catch (IOException e) {
+                assertSame(error, e);
+            }
+        }
+    }
+
+    public void testRuntimeError() throws IOException {
+        final RuntimeException error = new IllegalStateException("bug");
+        try (ReadAheadBuffer in = new ReadAheadBuffer(new TestInputStream(data(10), error), 100)) {
+            try {
+                readAll(in, 100);
+                fail("no exception");
+            } catch (IOException e) {
+                assertSame(error, e.getCause());
+            }
+        }
+    }
+
+    // The consumer waits for an input that does not deliver, another thread closes.
+    public void testCloseWhileConsumerBlocked() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final InputStream stalled = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+        final ReadAheadBuffer in = new ReadAheadBuffer(stalled, 100);
+        final AtomicReference<Throwable> result = new AtomicReference<>();
+        final Thread reader = new Thread(() -> {
+            try {
+                in.read();
+            } catch (Throwable e) {
+                result.set(e);
+            }
+        });
+        // Must not keep the tests from exiting if it hangs
+        reader.setDaemon(true);
+        reader.start();
+        Thread.sleep(100);
+        in.close();
+        reader.join(10000);
+        assertFalse("read did not return after close", reader.isAlive());
+        assertTrue(result.get() instanceof IOException);
+        release.countDown();
+    }
+
+    // The ring is full and the producer waits for the consumer, which closes.
+    public void testCloseWhileProducerBlocked() throws Exception {
+        final TestInputStream input = new TestInputStream(data(1000000), null);
+        final ReadAheadBuffer in = new ReadAheadBuffer(input, 1000);
+        assertTrue(in.read() >= 0);
+        Thread.sleep(100);
+        in.close();
+        assertTrue("input not closed", awaitClosed(input));
+        try {
+            in.read();
+            fail("read after close");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static boolean awaitClosed(final TestInputStream input) {
+        try {
+            return input.closed.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+}
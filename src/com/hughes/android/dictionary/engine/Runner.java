@@ -19,17 +19,18 @@ import java.util.Arrays;
 public class Runner {
     public static void main(final String[] args) throws Exception {
         if (args.length == 0) {
-            System.out.println("Specify WiktionarySplitter, DictionaryBuilder or ConvertToV6 as first argument");
+            System.out.println("Specify WiktionarySplitter, DictionaryBuilder, DictionaryBuilderBatch or ConvertToV6 as first argument");
             return;
         }
         String[] newargs = Arrays.copyOfRange(args, 1, args.length);
         switch (args[0]) {
             case "WiktionarySplitter" -> WiktionarySplitter.main(newargs);
             case "DictionaryBuilder" -> DictionaryBuilder.main(newargs);
+            case "DictionaryBuilderBatch" -> DictionaryBuilderBatch.main(newargs);
             case "ConvertToV6" -> ConvertToV6.main(newargs);
             case "CheckDictionariesMain" -> CheckDictionariesMain.main(newargs);
             default ->
-                    System.out.println("Unknown command '" + args[0] + "'. Use one of WiktionarySplitter, DictionaryBuilder, ConvertToV6 or CheckDictionariesMain instead.");
+                    System.out.println("Unknown command '" + args[0] + "'. Use one of WiktionarySplitter, DictionaryBuilder, DictionaryBuilderBatch, ConvertToV6 or CheckDictionariesMain instead.");
         }
     }
 }
@@ -0,0 +1,107 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.compress.compressors.CompressorException;
+
+/**
+ * Opens the compressed split files (see WiktionarySplitter), and keeps
+ * decoded copies of them in a cache directory if the build has one. Dictionary
+ * builds often read the same split file several times (e.g. EN.data for
+ * every EN-* dictionary), with the cache it is decoded only once and then
+ * read through a memory mapping, so all builds (also in different
+ * processes) share the same copy in the page cache.
+ * The cached copies are replaced when the split file changes, but never
+ * deleted.
+ */
+public final class SplitCache {
+    private static final String[] SUFFIXES = {".bz2", ".gz", ".xz", ".zst"};
+
+    // Builds in the same process wait for each other instead of decoding twice.
+    private static final Map<File, Object> locks = new ConcurrentHashMap<>();
+
+    private SplitCache() {
+    }
+
+    /** The compressed file for the split file, or null if it is not compressed. */
+    public static File findCompressed(final File file) {
+        for (final String suffix : SUFFIXES) {
+            final File input = new File(file.getPath() + suffix);
+            if (input.exists()) return input;
+        }
+        return null;
+    }
+
+    /** Decompresses input (as returned by findCompressed), reading ahead on another thread. */
+    public static InputStream open(final File input) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(input));
+        if (input.getName().endsWith(".zst")) {
+            // Might use the shared dictionary of the split files
+            in = ZstdDictionary.decompress(in, ZstdDictionary.load(input.getAbsoluteFile().getParentFile()));
+        } else {
+            try {
+                in = ParallelBZip2InputStream.createCompressorInputStream(in);
+            } catch (CompressorException e) {
+                in.close();
+                throw new IOException(e);
+            }
+        }
+        return new ReadAheadBuffer(in, 20 * 1024 * 1024);
+    }
+
+    /**
+     * The decoded copy of the compressed file input in cacheDir, decoding
+     * it first if necessary. Returns null if cacheDir is null.
+     */
+    public static File decoded(final File input, final File cacheDir) throws IOException {
+        if (cacheDir == null) return null;
+        final File absolute = input.getAbsoluteFile();
+        String name = absolute.getName();
+        name = name.substring(0, name.lastIndexOf('.'));
+        // Split files of different wikis have the same names
+        final File cached = new File(cacheDir, Integer.toHexString(absolute.getPath().hashCode()) + "-" + name);
+        synchronized (locks.computeIfAbsent(cached, k -> new Object())) {
+            if (cached.lastModified() == input.lastModified()) return cached;
+            System.out.println("Decoding " + input + " to " + cached);
+            Files.createDirectories(cacheDir.toPath());
+            final File tmp = File.createTempFile(cached.getName(), ".tmp", cacheDir);
+            try {
+                try (InputStream in = open(input); OutputStream out = new FileOutputStream(tmp)) {
+                    in.transferTo(out);
+                }
+                if (!tmp.setLastModified(input.lastModified())) {
+                    throw new IOException("Could not set modification time of " + tmp);
+                }
+                // Other processes never see a partially written file.
+                Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+            return cached;
+        }
+    }
+}
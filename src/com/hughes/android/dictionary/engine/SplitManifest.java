@@ -0,0 +1,305 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+import com.hughes.android.dictionary.engine.WiktionarySplitter.Section;
+import com.hughes.android.dictionary.engine.WiktionarySplitter.Selector;
+
+/**
+ * The pages of a previous WiktionarySplitter run, for the incremental mode.
+ * The manifest lists for every page (in output order) a hash of its title
+ * and text and which outputs its sections went to. Unchanged pages can
+ * then be copied from the previous outputs instead of being split again.
+ * Manifest entries: long titleHash, long textHash, short sectionCount,
+ * sectionCount * short selectorIndex.
+ */
+final class SplitManifest {
+    // Change when the splitting itself changes, so old outputs are not reused.
+    static final int VERSION = 1;
+    static final String FILE_NAME = "pages.manifest";
+    // Loaded, a manifest takes up to about this many times its file size:
+    // a page is 18 bytes in the file and up to 40 bytes in the arrays (when
+    // just grown) plus 48 in the hash table, a section 2 bytes and up to 8.
+    static final int MEMORY_PER_FILE_BYTE = 5;
+
+    // All by page number
+    private int pageCount = 0;
+    private long[] titleHashes = new long[1024];
+    private long[] textHashes = new long[1024];
+    private int[] sectionStarts = new int[1025];
+    private short[] sectionSelectors = new short[1024];
+
+    // Open addressing hash table from title hash to page number + 1
+    private long[] tableKeys;
+    private int[] tablePages;
+
+    // Per selector: the previous output and the page numbers of its records
+    private final Selector[] selectors;
+    private final DataInputStream[] previous;
+    private final File[] oldFiles;
+    private final List<ChunkedSplitFile.Reader> chunkedReaders = new ArrayList<>();
+    private final int[][] recordPages;
+    private final int[] recordPos;
+
+    /**
+     * Loads the manifest and opens the previous outputs (renamed to .old,
+     * unless those are still there from a run that failed).
+     * Returns null if there is none or it was created with different settings.
+     */
+    static SplitManifest open(final File file, final List<Selector> selectors, final Set<String> ignoredNamespaces,
+                              final String suffix) throws IOException, CompressorException {
+        if (!file.exists()) return null;
+        for (final Selector selector : selectors) {
+            if (!new File(selector.outFilename + suffix).exists() && !new File(selector.outFilename + suffix + ".old").exists()) return null;
+        }
+        final SplitManifest manifest = new SplitManifest(selectors);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != configHash(selectors, ignoredNamespaces, suffix)) return null;
+            manifest.read(in);
+        }
+        // Loaded now, the splitter deletes it when it no longer uses one.
+        final byte[] dict = suffix.equals(".zst") ? ZstdDictionary.load(new File(selectors.get(0).outFilename).getParentFile()) : null;
+        for (int i = 0; i < selectors.size(); ++i) {
+            final File output = new File(selectors.get(i).outFilename + suffix);
+            final File old = new File(selectors.get(i).outFilename + suffix + ".old");
+            if (!old.exists() && !output.renameTo(old)) throw new IOException("Could not rename " + output + " to " + old);
+            manifest.oldFiles[i] = old;
+            if (suffix.equals(ChunkedSplitFile.SUFFIX)) {
+                final ChunkedSplitFile.Reader reader = new ChunkedSplitFile.Reader(old);
+                manifest.chunkedReaders.add(reader);
+                manifest.previous[i] = new DataInputStream(new BufferedInputStream(reader.openAll()));
+            } else if (suffix.equals(".zst")) {
+                manifest.previous[i] = new DataInputStream(new BufferedInputStream(ZstdDictionary.decompress(
+                        new BufferedInputStream(new FileInputStream(old)), dict)));
+            } else {
+                manifest.previous[i] = new DataInputStream(new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(
+                        CompressorStreamFactory.GZIP, new BufferedInputStream(new FileInputStream(old)))));
+            }
+        }
+        return manifest;
+    }
+
+    /** Estimated memory use of the manifest in the directory once opened. */
+    static long memoryEstimate(final File dir) {
+        return MEMORY_PER_FILE_BYTE * new File(dir, FILE_NAME).length();
+    }
+
+    private SplitManifest(final List<Selector> selectors) {
+        this.selectors = selectors.toArray(new Selector[0]);
+        previous = new DataInputStream[selectors.size()];
+        oldFiles = new File[selectors.size()];
+        recordPages = new int[selectors.size()][];
+        recordPos = new int[selectors.size()];
+    }
+
+    private void read(final DataInputStream in) throws IOException {
+        while (true) {
+            final long titleHash;
+            try {
+                titleHash = in.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            if (pageCount == titleHashes.length) {
+                titleHashes = Arrays.copyOf(titleHashes, 2 * pageCount);
+                textHashes = Arrays.copyOf(textHashes, 2 * pageCount);
+                sectionStarts = Arrays.copyOf(sectionStarts, 2 * pageCount + 1);
+            }
+            titleHashes[pageCount] = titleHash;
+            textHashes[pageCount] = in.readLong();
+            int sections = sectionStarts[pageCount];
+            final int count = in.readShort();
+            if (sections + count > sectionSelectors.length) {
+                sectionSelectors = Arrays.copyOf(sectionSelectors, 2 * (sections + count));
+            }
+            for (int i = 0; i < count; ++i) {
+                final short selector = in.readShort();
+                if (selector < 0 || selector >= selectors.length) throw new IOException("Invalid manifest");
+                sectionSelectors[sections++] = selector;
+            }
+            sectionStarts[++pageCount] = sections;
+        }
+
+        tableKeys = new long[Integer.highestOneBit(Math.max(pageCount, 1)) * 4];
+        tablePages = new int[tableKeys.length];
+        for (int page = 0; page < pageCount; ++page) {
+            int slot = slot(titleHashes[page]);
+            while (tablePages[slot] != 0) slot = (slot + 1) & (tableKeys.length - 1);
+            tableKeys[slot] = titleHashes[page];
+            tablePages[slot] = page + 1;
+        }
+        // The table has them now
+        titleHashes = null;
+
+        final int[] counts = new int[selectors.length];
+        for (int i = 0; i < sectionStarts[pageCount]; ++i) {
+            ++counts[sectionSelectors[i]];
+        }
+        for (int s = 0; s < selectors.length; ++s) {
+            recordPages[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int page = 0; page < pageCount; ++page) {
+            for (int i = sectionStarts[page]; i < sectionStarts[page + 1]; ++i) {
+                final int s = sectionSelectors[i];
+                recordPages[s][counts[s]++] = page;
+            }
+        }
+    }
+
+    private int slot(final long titleHash) {
+        return (int) (titleHash ^ (titleHash >>> 32)) & (tableKeys.length - 1);
+    }
+
+    private int findPage(final String title) {
+        final long titleHash = hash(title);
+        int slot = slot(titleHash);
+        while (tablePages[slot] != 0) {
+            if (tableKeys[slot] == titleHash) return tablePages[slot] - 1;
+            slot = (slot + 1) & (tableKeys.length - 1);
+        }
+        return -1;
+    }
+
+    /** Whether the page existed with the same text, can be called from any thread. */
+    boolean isUnchanged(final String title, final long textHash) {
+        final int page = findPage(title);
+        return page >= 0 && textHashes[page] == textHash;
+    }
+
+    /**
+     * Reads the sections of an unchanged page from the previous outputs.
+     * Must be called in output order, returns null if the page cannot be
+     * copied (because it moved before pages already copied).
+     */
+    List<Section> copy(final String title, final long textHash) throws IOException {
+        final int page = findPage(title);
+        if (page < 0 || textHashes[page] != textHash) return null;
+        for (int i = sectionStarts[page]; i < sectionStarts[page + 1]; ++i) {
+            final int s = sectionSelectors[i];
+            if (recordPos[s] >= recordPages[s].length || recordPages[s][recordPos[s]] > page) return null;
+        }
+        final List<Section> sections = new ArrayList<>(sectionStarts[page + 1] - sectionStarts[page]);
+        for (int i = sectionStarts[page]; i < sectionStarts[page + 1]; ++i) {
+            final int s = sectionSelectors[i];
+            final DataInputStream in = previous[s];
+            // Skip the records of changed or deleted pages
+            while (recordPages[s][recordPos[s]] < page) {
+                in.readUTF();
+                in.readUTF();
+                in.skipNBytes(in.readInt());
+                ++recordPos[s];
+            }
+            final String previousTitle = in.readUTF();
+            if (!previousTitle.equals(title)) {
+                throw new IOException("Previous output " + selectors[s].outFilename + " does not match manifest: " + previousTitle + " instead of " + title);
+            }
+            final String heading = in.readUTF();
+            final byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            ++recordPos[s];
+            sections.add(new Section(selectors[s], title, heading, text));
+        }
+        return sections;
+    }
+
+    /** Closes and deletes the previous outputs. */
+    void close() throws IOException {
+        for (int s = 0; s < selectors.length; ++s) {
+            previous[s].close();
+        }
+        for (final ChunkedSplitFile.Reader reader : chunkedReaders) {
+            reader.close();
+        }
+        for (final File old : oldFiles) {
+            old.delete();
+        }
+    }
+
+    // 64 bit FNV-1a
+    static long hash(final String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); ++i) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long configHash(final List<Selector> selectors, final Set<String> ignoredNamespaces, final String suffix) {
+        final StringBuilder config = new StringBuilder().append(VERSION).append(suffix).append('\n');
+        for (final Selector selector : selectors) {
+            config.append(selector.outFilename).append('\n').append(selector.pattern.pattern()).append('\n');
+        }
+        for (final String namespace : new TreeSet<>(ignoredNamespaces)) {
+            config.append(namespace).append('\n');
+        }
+        return hash(config.toString());
+    }
+
+    /**
+     * Writes the manifest for the current run, to a temporary file that
+     * only replaces the old one when complete.
+     */
+    static final class Writer {
+        private final File file;
+        private final File tmpFile;
+        private final DataOutputStream out;
+        private final Map<Selector, Integer> selectorIndex = new IdentityHashMap<>();
+
+        Writer(final File file, final List<Selector> selectors, final Set<String> ignoredNamespaces, final String suffix) throws IOException {
+            this.file = file;
+            tmpFile = new File(file.getPath() + ".tmp");
+            for (int i = 0; i < selectors.size(); ++i) {
+                selectorIndex.put(selectors.get(i), i);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeLong(configHash(selectors, ignoredNamespaces, suffix));
+        }
+
+        void add(final String title, final long textHash, final List<Section> sections) throws IOException {
+            out.writeLong(hash(title));
+            out.writeLong(textHash);
+            out.writeShort(sections.size());
+            for (final Section section : sections) {
+                out.writeShort(selectorIndex.get(section.selector));
+            }
+        }
+
+        void close() throws IOException {
+            out.close();
+            if (!tmpFile.renameTo(file)) throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+    }
+}
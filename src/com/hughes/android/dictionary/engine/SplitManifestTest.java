@@ -0,0 +1,200 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+
+import com.hughes.android.dictionary.engine.WiktionarySplitter.Section;
+import com.hughes.android.dictionary.engine.WiktionarySplitter.Selector;
+
+import junit.framework.TestCase;
+
+public class SplitManifestTest extends TestCase {
+
+    private static final Set<String> NAMESPACES = Collections.singleton("Category");
+
+    private File dir;
+    private List<Selector> selectors;
+    private int copiedPages;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("SplitManifestTest").toFile();
+        selectors = Arrays.asList(new Selector(new File(dir, "A.data").getPath(), "A"),
+                                  new Selector(new File(dir, "B.data").getPath(), "B"));
+    }
+
+    @Override
+    protected void tearDown() {
+        for (final File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    // Instead of a real split: "A:x B:y" has a section "x" for A and "y" for B.
+    private List<Section> split(final String title, final String text) {
+        final List<Section> sections = new ArrayList<>();
+        for (final String part : text.split(" ")) {
+            if (part.isEmpty()) continue;
+            final Selector selector = selectors.get(part.charAt(0) - 'A');
+            sections.add(new Section(selector, title, "heading", part.substring(2).getBytes(StandardCharsets.UTF_8)));
+        }
+        return sections;
+    }
+
+    // What WiktionarySplitter does with one run over the pages (title, text, title, text, ...)
+    private void run(final String suffix, final String... pages) throws Exception {
+        final File manifestFile = new File(dir, SplitManifest.FILE_NAME);
+        final SplitManifest previous = SplitManifest.open(manifestFile, selectors, NAMESPACES, suffix);
+        final SplitManifest.Writer manifest = new SplitManifest.Writer(manifestFile, selectors, NAMESPACES, suffix);
+        for (final Selector selector : selectors) {
+            if (suffix.equals(ChunkedSplitFile.SUFFIX)) {
+                selector.chunks = new ChunkedSplitFile.Writer(new File(selector.outFilename + suffix));
+                selector.out = new DataOutputStream(selector.chunks);
+            } else {
+                selector.chunks = null;
+                selector.out = new DataOutputStream(new GzipCompressorOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(selector.outFilename + suffix))));
+            }
+        }
+        copiedPages = 0;
+        for (int i = 0; i < pages.length; i += 2) {
+            final long textHash = SplitManifest.hash(pages[i + 1]);
+            List<Section> sections = null;
+            if (previous != null && previous.isUnchanged(pages[i], textHash)) {
+                sections = previous.copy(pages[i], textHash);
+                if (sections != null) ++copiedPages;
+            }
+            if (sections == null) sections = split(pages[i], pages[i + 1]);
+            for (final Section section : sections) {
+                section.write();
+            }
+            manifest.add(pages[i], textHash, sections);
+        }
+        for (final Selector selector : selectors) {
+            selector.out.close();
+        }
+        if (previous != null) previous.close();
+        manifest.close();
+    }
+
+    private List<String> records(final Selector selector, final String suffix) throws IOException {
+        final File file = new File(selector.outFilename + suffix);
+        final List<String> records = new ArrayList<>();
+        ChunkedSplitFile.Reader reader = null;
+        final InputStream raw;
+        if (suffix.equals(ChunkedSplitFile.SUFFIX)) {
+            reader = new ChunkedSplitFile.Reader(file);
+            raw = reader.openAll();
+        } else {
+            raw = new GzipCompressorInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+        try (DataInputStream in = new DataInputStream(raw)) {
+            while (true) {
+                final String title;
+                try {
+                    title = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                final String heading = in.readUTF();
+                final byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                records.add(title + "|" + heading + "|" + new String(text, StandardCharsets.UTF_8));
+            }
+        } finally {
+            if (reader != null) reader.close();
+        }
+        return records;
+    }
+
+    private void checkRoundTrip(final String suffix) throws Exception {
+        run(suffix,
+            "p1", "A:one B:eins",
+            "p2", "A:two",
+            "p3", "B:drei",
+            "p4", "A:four B:vier",
+            "p5", "",
+            "p6", "A:six B:sechs");
+        assertEquals(0, copiedPages);
+        assertEquals(Arrays.asList("p1|heading|one", "p2|heading|two", "p4|heading|four", "p6|heading|six"),
+                     records(selectors.get(0), suffix));
+
+        // p2 changed, p3 deleted, p1 moved behind p4, p7 new, the others unchanged
+        final String[] pages = {
+            "p4", "A:four B:vier",
+            "p1", "A:one B:eins",
+            "p2", "A:zwo B:zwei",
+            "p7", "B:sieben",
+            "p5", "",
+            "p6", "A:six B:sechs",
+        };
+        run(suffix, pages);
+        // p1 cannot be copied, the outputs are already past it
+        assertEquals(3, copiedPages);
+        assertEquals(Arrays.asList("p4|heading|four", "p1|heading|one", "p2|heading|zwo", "p6|heading|six"),
+                     records(selectors.get(0), suffix));
+        assertEquals(Arrays.asList("p4|heading|vier", "p1|heading|eins", "p2|heading|zwei", "p7|heading|sieben", "p6|heading|sechs"),
+                     records(selectors.get(1), suffix));
+        for (final Selector selector : selectors) {
+            assertFalse(new File(selector.outFilename + suffix + ".old").exists());
+        }
+
+        // Nothing changed
+        run(suffix, pages);
+        assertEquals(6, copiedPages);
+        assertEquals(Arrays.asList("p4|heading|vier", "p1|heading|eins", "p2|heading|zwei", "p7|heading|sieben", "p6|heading|sechs"),
+                     records(selectors.get(1), suffix));
+    }
+
+    public void testGzipRoundTrip() throws Exception {
+        checkRoundTrip(".gz");
+    }
+
+    public void testChunkedRoundTrip() throws Exception {
+        checkRoundTrip(ChunkedSplitFile.SUFFIX);
+    }
+
+    public void testOtherSettings() throws Exception {
+        run(".gz", "p1", "A:one");
+        final File manifestFile = new File(dir, SplitManifest.FILE_NAME);
+        assertNull(SplitManifest.open(manifestFile, selectors, Collections.emptySet(), ".gz"));
+        assertNull(SplitManifest.open(manifestFile, selectors.subList(0, 1), NAMESPACES, ".gz"));
+        // The outputs are missing
+        assertNull(SplitManifest.open(manifestFile, selectors, NAMESPACES, ChunkedSplitFile.SUFFIX));
+        assertTrue(SplitManifest.memoryEstimate(dir) > 0);
+    }
+
+}
@@ -0,0 +1,152 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several WiktionarySplitters at once ('parallel' mode) within a
+ * memory budget. The largest dumps are started first, so that the smaller
+ * ones can fill in the gaps at the end. The buffers of each splitter are
+ * made smaller when its default ones would need more than its share of the
+ * budget, and splitters only start when their estimated memory use fits
+ * into what the running ones leave.
+ * The estimates are rough, they include native memory of the compressors
+ * and the bzip2 decoders. The cores are shared between the decoders of the
+ * dumps that can run at once.
+ */
+final class SplitScheduler {
+    // Parser, page texts and other per-dump working memory.
+    static final long BASE_MEMORY = 64L * 1024 * 1024;
+    // Pages waiting in the pipeline, per split thread.
+    static final long PIPELINE_THREAD_MEMORY = 16L * 1024 * 1024;
+    static final long GZIP_MEMORY = 256 * 1024;
+    static final long ZSTD_MEMORY = 2L * 1024 * 1024;
+    static final int MIN_READ_AHEAD_SIZE = 1024 * 1024;
+    static final int MIN_WRITE_BUFFER_SIZE = 2 * WriteBuffer.BLOCK_SIZE;
+
+    private final long budget;
+    private final int cores;
+    private long available;
+
+    SplitScheduler(final long budget, final int cores) {
+        this.budget = budget;
+        this.cores = Math.max(1, cores);
+        available = budget;
+    }
+
+    void run(final List<WiktionarySplitter> splitters) throws Exception {
+        final List<WiktionarySplitter> sorted = new ArrayList<>(splitters);
+        sorted.sort(Comparator.comparingLong((WiktionarySplitter s) -> s.input().length()).reversed());
+        final int running = Math.max(1, Math.min(cores, sorted.size()));
+        final long share = budget / running;
+        final ExecutorService executor = Executors.newFixedThreadPool(cores);
+        final List<Future<?>> results = new ArrayList<>();
+        for (final WiktionarySplitter splitter : sorted) {
+            splitter.decodeThreads = Math.max(1, cores / running);
+            long memory = fit(splitter, share);
+            if (memory > budget) {
+                System.out.println("Splitting " + splitter.path + " needs about " + memory / (1024 * 1024)
+                        + " MB, more than the memory budget, running it alone");
+                memory = budget;
+            }
+            acquire(memory);
+            System.out.println("Splitting " + splitter.path + " with about " + memory / (1024 * 1024) + " MB, read ahead "
+                    + splitter.readAheadSize / 1024 + " kB, write buffers " + splitter.writeBufferSize / 1024 + " kB, "
+                    + splitter.decodeThreads + " decoder threads");
+            final long reserved = memory;
+            results.add(executor.submit(() -> {
+                try {
+                    splitter.go();
+                } finally {
+                    release(reserved);
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        // Let the others finish, but report the first failure.
+        Exception error = null;
+        for (final Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (error == null) error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * Sets the buffer sizes of the splitter so that it uses at most share
+     * (if possible), and returns its estimated memory use.
+     */
+    static long fit(final WiktionarySplitter splitter, final long share) {
+        final int outputs = splitter.selectors.size();
+        long fixed = BASE_MEMORY;
+        if (splitter.splitThreads > 0 || splitter.multistream) {
+            final int threads = splitter.splitThreads > 0 ? splitter.splitThreads : Runtime.getRuntime().availableProcessors();
+            fixed += threads * PIPELINE_THREAD_MEMORY;
+        }
+        if (!splitter.useMultistream() && splitter.input().getName().endsWith(".bz2")) {
+            fixed += ParallelBZip2InputStream.memoryEstimate(splitter.decodeThreads);
+        }
+        if (splitter.incremental) {
+            fixed += SplitManifest.memoryEstimate(splitter.splitDir);
+        }
+        if (splitter.zstdDict) {
+            // The samples, and their copy in the trainer
+            fixed += 2L * ZstdDictionary.SAMPLES_SIZE;
+        }
+        if (splitter.chunked) {
+            // Uncompressed chunk and its compressed copy, no write buffer
+            fixed += outputs * (ChunkedSplitFile.CHUNK_SIZE * 7L / 4 + GZIP_MEMORY);
+        } else {
+            fixed += outputs * (splitter.zstd ? ZSTD_MEMORY : GZIP_MEMORY);
+        }
+
+        final long readAhead = clamp((share - fixed) / 4, MIN_READ_AHEAD_SIZE, WiktionarySplitter.DEFAULT_READ_AHEAD_SIZE);
+        splitter.readAheadSize = (int) readAhead;
+        long memory = fixed + readAhead;
+        if (!splitter.chunked) {
+            final long writeBuffer = clamp((share - memory) / Math.max(1, outputs), MIN_WRITE_BUFFER_SIZE, WiktionarySplitter.DEFAULT_WRITE_BUFFER_SIZE);
+            splitter.writeBufferSize = (int) writeBuffer;
+            memory += outputs * writeBuffer;
+        }
+        return memory;
+    }
+
+    private static long clamp(final long value, final long min, final long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private synchronized void acquire(final long memory) throws InterruptedException {
+        while (available < memory) {
+            wait();
+        }
+        available -= memory;
+    }
+
+    private synchronized void release(final long memory) {
+        available += memory;
+        notifyAll();
+    }
+}
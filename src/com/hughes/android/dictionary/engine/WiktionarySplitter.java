@@ -16,20 +16,35 @@ package com.hughes.android.dictionary.engine;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,13 +52,18 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.hughes.android.dictionary.parser.wiktionary.WiktionaryLangs;
+import com.hughes.util.Args;
 
-public class WiktionarySplitter extends org.xml.sax.helpers.DefaultHandler implements Runnable {
+public class WiktionarySplitter implements Runnable {
 
     // The matches the whole line, otherwise regexes don't work well on French:
     // {{=uk=}}
@@ -52,46 +72,139 @@ public class WiktionarySplitter extends org.xml.sax.helpers.DefaultHandler imple
     static final Pattern headingStartPattern = Pattern.compile("^(=+)[^=].*$", Pattern.MULTILINE);
     static final Pattern startSpanish = Pattern.compile("\\{\\{ES(\\|[^{}=]*)?}}");
 
-    final Map.Entry<String, List<Selector>> pathToSelectorsEntry;
+    // Number of bzip2 streams (of 100 pages each) handled by one task
+    // when splitting a multistream dump.
+    static final int MULTISTREAM_CHUNK = 10;
+
+    static final int DEFAULT_READ_AHEAD_SIZE = 20 * 1024 * 1024;
+    static final int DEFAULT_WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    final String wikiCode;
+    final String path;
+    final File splitDir;
+    final List<Selector> selectors;
+    final int splitThreads;
+    final boolean multistream;
+    final boolean byteParser;
+    final boolean incremental;
+    final boolean chunked;
+    final boolean zstd;
+    final int zstdLevel;
+    final boolean zstdDict;
     List<Selector> currentSelectors = null;
-
-    StringBuilder titleBuilder;
-    StringBuilder textBuilder;
-    StringBuilder currentBuilder = null;
+    SectionSplitter sectionSplitter = null;
+    SplitPipeline pipeline = null;
+    SplitManifest previousSplit = null;
+    SplitManifest.Writer manifest = null;
+    // With 'zstddict': the dictionary, or the first sections while
+    // collecting the samples to train it, the outputs are opened after that.
+    byte[] dict = null;
+    List<Section> dictSamples = null;
+    long dictSamplesSize = 0;
+    // Lowered by SplitScheduler to fit its memory budget.
+    int readAheadSize = DEFAULT_READ_AHEAD_SIZE;
+    int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+    // Threads for decoding a bzip2 dump, SplitScheduler shares --cores= between the dumps.
+    int decodeThreads = ParallelBZip2InputStream.THREADS;
+    final PageHandler pageHandler = new PageHandler(this::endPage);
 
     public static void main(final String[] args) throws Exception {
         System.setProperty("jdk.xml.totalEntitySizeLimit", "0");
-        boolean parallel = args.length > 0 && args[0].equals("parallel");
+        final List<String> flags = Arrays.asList(args);
+        final Map<String,String> keyValueArgs = Args.keyValueArgs(args);
+        boolean parallel = flags.contains("parallel");
         if (!parallel) System.out.println("Consider using 'parallel' argument to speed up processing by running in parallel - needs more memory");
-        final ExecutorService e = Executors.newCachedThreadPool();
-        final Map<String,List<Selector>> pathToSelectors = createSelectorsMap();
-        for (final Map.Entry<String, List<Selector>> pathToSelectorsEntry : pathToSelectors.entrySet()) {
-            final WiktionarySplitter wiktionarySplitter = new WiktionarySplitter(pathToSelectorsEntry);
+        // With 'parallel', at most --cores= dumps are split at once, and
+        // only as many as fit into --memoryBudget= (in MB, default 3/4 of
+        // the maximum heap size), with smaller buffers if necessary.
+        final String cores = keyValueArgs.get("cores");
+        final String memoryBudget = keyValueArgs.get("memoryBudget");
+        // 'pipeline' runs decompression, XML parsing and the section splitting
+        // of each dump on separate threads, so that even a single large
+        // dump can use several cores.
+        int splitThreads = 0;
+        if (flags.contains("pipeline")) {
+            final String threads = keyValueArgs.get("splitThreads");
+            splitThreads = threads != null ? Integer.parseInt(threads) : Runtime.getRuntime().availableProcessors();
+        }
+        // 'multistream' uses the offset index of the pages-articles-multistream
+        // dumps (where available) to decompress, parse and split independent
+        // ranges of the dump in parallel.
+        final boolean multistream = flags.contains("multistream");
+        // 'byteparser' extracts the pages directly from the UTF-8 bytes
+        // instead of using SAX, the output is the same.
+        final boolean byteParser = flags.contains("byteparser");
+        // 'incremental' keeps a manifest of the page hashes next to the
+        // outputs and on the next run copies the sections of unchanged
+        // pages from the previous outputs instead of splitting them again.
+        final boolean incremental = flags.contains("incremental");
+        // 'chunked' writes the outputs as ChunkedSplitFile instead of .gz,
+        // which allows reading parts of them.
+        final boolean chunked = flags.contains("chunked");
+        // 'zstd' writes the outputs as .zst, with the level from --zstdLevel=,
+        // 'zstddict' additionally uses a dictionary trained on the first
+        // sections (kept in ZstdDictionary.FILE_NAME and reused by later
+        // runs, delete it to train a new one).
+        final boolean zstdDict = flags.contains("zstddict");
+        final boolean zstd = zstdDict || flags.contains("zstd");
+        final String level = keyValueArgs.get("zstdLevel");
+        final int zstdLevel = level != null ? Integer.parseInt(level) : 3;
+        if (zstd && chunked) System.out.println("'chunked' outputs are always gzip compressed, ignoring 'zstd'");
+        // Checked before go() deletes the previous outputs.
+        if (zstd && !chunked && !ZstdDictionary.isAvailable()) {
+            throw new RuntimeException("'zstd' and 'zstddict' need zstd-jni, see compile.sh");
+        }
+        final List<WiktionarySplitter> splitters = new ArrayList<>();
+        final Map<String,List<Selector>> wikiCodeToSelectors = createSelectorsMap();
+        for (final Map.Entry<String, List<Selector>> wikiCodeToSelectorsEntry : wikiCodeToSelectors.entrySet()) {
+            final WiktionarySplitter wiktionarySplitter = new WiktionarySplitter(wikiCodeToSelectorsEntry.getKey(),
+                    wikiCodeToSelectorsEntry.getValue(), splitThreads, multistream, byteParser, incremental, chunked,
+                    zstd && !chunked, zstdLevel, zstdDict && !chunked);
+            if (cores != null) wiktionarySplitter.decodeThreads = Integer.parseInt(cores);
             if (parallel) {
-                e.submit(wiktionarySplitter);
+                splitters.add(wiktionarySplitter);
             } else wiktionarySplitter.go();
         }
-        e.shutdown();
+        if (parallel) {
+            final SplitScheduler scheduler = new SplitScheduler(
+                    memoryBudget != null ? Long.parseLong(memoryBudget) * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 4 * 3,
+                    cores != null ? Integer.parseInt(cores) : Runtime.getRuntime().availableProcessors());
+            scheduler.run(splitters);
+        }
     }
 
-    private WiktionarySplitter(final Map.Entry<String, List<Selector>> pathToSelectorsEntry) {
-        this.pathToSelectorsEntry = pathToSelectorsEntry;
+    private WiktionarySplitter(final String wikiCode, final List<Selector> selectors, final int splitThreads,
+                               final boolean multistream, final boolean byteParser, final boolean incremental,
+                               final boolean chunked, final boolean zstd, final int zstdLevel,
+                               final boolean zstdDict) {
+        this.wikiCode = wikiCode;
+        this.path = String.format("data/inputs/%swiktionary-pages-articles.xml", wikiCode);
+        this.splitDir = new File(String.format("data/inputs/wikiSplit/%s", wikiCode));
+        this.selectors = selectors;
+        this.splitThreads = splitThreads;
+        this.multistream = multistream;
+        this.byteParser = byteParser;
+        this.incremental = incremental;
+        this.chunked = chunked;
+        this.zstd = zstd;
+        this.zstdLevel = zstdLevel;
+        this.zstdDict = zstdDict;
     }
 
     private static Map<String,List<Selector>> createSelectorsMap() {
-        final Map<String,List<Selector>> pathToSelectors = new LinkedHashMap<>();
+        final Map<String,List<Selector>> wikiCodeToSelectors = new LinkedHashMap<>();
         List<Selector> selectors;
         for (final String code : WiktionaryLangs.wikiCodeToIsoCodeToWikiName.keySet()) {
             //if (!code.equals("fr")) {continue;}
             selectors = new ArrayList<>();
-            pathToSelectors.put(String.format("data/inputs/%swiktionary-pages-articles.xml", code), selectors);
+            wikiCodeToSelectors.put(code, selectors);
             for (final Map.Entry<String, String> entry : WiktionaryLangs.wikiCodeToIsoCodeToWikiName.get(code).entrySet()) {
                 final String dir = String.format("data/inputs/wikiSplit/%s", code);
                 new File(dir).mkdirs();
                 selectors.add(new Selector(String.format("%s/%s.data", dir, entry.getKey()), entry.getValue()));
             }
         }
-        return pathToSelectors;
+        return wikiCodeToSelectors;
     }
 
     @Override
@@ -103,179 +216,343 @@ public class WiktionarySplitter extends org.xml.sax.helpers.DefaultHandler imple
         }
     }
 
-    private void go() throws Exception {
-        final SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+    /** The dump to split, the multistream one if that is used. */
+    // Whether go() splits the multistream dump using its index.
+    boolean useMultistream() {
+        final String basePath = path.replaceFirst("\\.xml$", "-multistream");
+        return multistream && new File(basePath + ".xml.bz2").exists() && new File(basePath + "-index.txt.bz2").exists();
+    }
 
-        // Configure things.
+    File input() {
+        if (useMultistream()) {
+            return new File(path.replaceFirst("\\.xml$", "-multistream") + ".xml.bz2");
+        }
+        File input = new File(path + ".bz2");
+        if (!input.exists()) input = new File(path + ".gz");
+        if (!input.exists()) input = new File(path + ".xz");
+        // Fallback to uncompressed file
+        if (!input.exists()) input = new File(path);
+        return input;
+    }
 
-            currentSelectors = pathToSelectorsEntry.getValue();
+    void go() throws Exception {
+        final String basePath = path.replaceFirst("\\.xml$", "-multistream");
+        final File multistreamInput = new File(basePath + ".xml.bz2");
+        final File multistreamIndex = new File(basePath + "-index.txt.bz2");
+        final boolean useMultistream = useMultistream();
 
+        // Configure things.
+
+            currentSelectors = selectors;
+            final Set<String> ignoredNamespaces = WiktionaryLangs.getIgnoredNamespaces(wikiCode);
+
+            final String suffix = chunked ? ChunkedSplitFile.SUFFIX : zstd ? ".zst" : ".gz";
+            final File manifestFile = new File(splitDir, SplitManifest.FILE_NAME);
+            if (incremental) {
+                previousSplit = SplitManifest.open(manifestFile, currentSelectors, ignoredNamespaces, suffix);
+                if (previousSplit == null) System.out.println("No usable manifest, splitting all pages of " + path);
+                manifest = new SplitManifest.Writer(manifestFile, currentSelectors, ignoredNamespaces, suffix);
+            } else {
+                // It would not match the new outputs
+                manifestFile.delete();
+            }
+            // The previous outputs are already open, so the dictionary they
+            // were written with is no longer needed.
+            if (zstdDict) {
+                dict = ZstdDictionary.load(splitDir);
+                if (dict == null) dictSamples = new ArrayList<>();
+            } else {
+                new File(splitDir, ZstdDictionary.FILE_NAME).delete();
+            }
             for (final Selector selector : currentSelectors) {
-                OutputStream tmp = new FileOutputStream(selector.outFilename + ".gz");
-                tmp = new BufferedOutputStream(tmp);
-                tmp = new CompressorStreamFactory().createCompressorOutputStream(CompressorStreamFactory.GZIP, tmp);
-                tmp = new WriteBuffer(tmp, 1024 * 1024);
-                selector.out = new DataOutputStream(tmp);
+                // The parser might prefer a stale file in another format
+                for (final String other : new String[] {".gz", ".zst", ChunkedSplitFile.SUFFIX}) {
+                    if (!other.equals(suffix)) new File(selector.outFilename + other).delete();
+                }
+                if (dictSamples == null) openOutput(selector);
             }
+            if (useMultistream) {
+                final int threads = splitThreads > 0 ? splitThreads : Runtime.getRuntime().availableProcessors();
+                pipeline = new SplitPipeline(currentSelectors, ignoredNamespaces, threads, 2 * threads, this::writePage);
+            } else if (splitThreads > 0) {
+                pipeline = new SplitPipeline(currentSelectors, ignoredNamespaces, splitThreads, 16 * splitThreads, this::writePage);
+            }
+            // Also used for unchanged pages that could not be copied.
+            sectionSplitter = new SectionSplitter(currentSelectors, ignoredNamespaces);
 
             // Do it.
             try {
-                File input = new File(pathToSelectorsEntry.getKey() + ".bz2");
-                if (!input.exists()) input = new File(pathToSelectorsEntry.getKey() + ".gz");
-                if (!input.exists()) input = new File(pathToSelectorsEntry.getKey() + ".xz");
-                if (!input.exists()) {
-                    // Fallback to uncompressed file
-                    parser.parse(new File(pathToSelectorsEntry.getKey()), this);
+                final File input = input();
+                if (useMultistream) {
+                    splitMultistream(multistreamInput, multistreamIndex);
+                } else if (input.getPath().equals(path)) {
+                    try (InputStream in = new FileInputStream(path)) {
+                        parsePages(in, pageHandler);
+                    }
                 } else {
                     InputStream compressedIn = new BufferedInputStream(new FileInputStream(input));
-                    InputStream in = new CompressorStreamFactory().createCompressorInputStream(compressedIn);
-                    in = new ReadAheadBuffer(in, 20 * 1024 * 1024);
-                    parser.parse(new BufferedInputStream(in), this);
+                    InputStream in = ParallelBZip2InputStream.createCompressorInputStream(compressedIn, decodeThreads);
+                    in = new ReadAheadBuffer(in, readAheadSize);
+                    parsePages(in, pageHandler);
                 }
             } catch (Exception e) {
-                System.err.println("Exception during parse, lastPageTitle=" + lastPageTitle + ", titleBuilder=" + titleBuilder + " of file " + pathToSelectorsEntry.getKey());
+                // Only the SAX parser fills the titleBuilder.
+                final String titleBuilder = useMultistream || byteParser ? "" : ", titleBuilder=" + pageHandler.titleBuilder;
+                System.err.println("Exception during parse, lastPageTitle=" + lastPageTitle + titleBuilder + " of file " + path);
+                if (pipeline != null) pipeline.abort();
                 throw e;
             }
+            if (pipeline != null) pipeline.finish();
+            // Too few sections to even start writing
+            if (dictSamples != null) trainDictionary();
 
             // Shutdown.
             for (final Selector selector : currentSelectors) {
                 selector.out.close();
             }
+            if (previousSplit != null) {
+                previousSplit.close();
+                System.out.println("Copied " + copiedPages + " unchanged of " + pageCount + " pages of " + path);
+            }
+            if (manifest != null) manifest.close();
+    }
+
+    private void openOutput(final Selector selector) throws IOException {
+        if (chunked) {
+            selector.chunks = new ChunkedSplitFile.Writer(new File(selector.outFilename + ChunkedSplitFile.SUFFIX));
+            selector.out = new DataOutputStream(selector.chunks);
+            return;
+        }
+        OutputStream tmp = new FileOutputStream(selector.outFilename + (zstd ? ".zst" : ".gz"));
+        tmp = new BufferedOutputStream(tmp);
+        if (zstdDict) {
+            tmp = ZstdDictionary.compress(tmp, zstdLevel, dict);
+        } else if (zstd) {
+            tmp = new ZstdCompressorOutputStream(tmp, zstdLevel);
+        } else {
+            try {
+                tmp = new CompressorStreamFactory().createCompressorOutputStream(CompressorStreamFactory.GZIP, tmp);
+            } catch (CompressorException e) {
+                throw new IOException(e);
+            }
+        }
+        tmp = new WriteBuffer(tmp, writeBufferSize);
+        selector.out = new DataOutputStream(tmp);
     }
 
-    String lastPageTitle = null;
+    /** Trains the dictionary on the collected sections, then opens the outputs and writes them. */
+    private void trainDictionary() throws IOException {
+        final List<byte[]> samples = new ArrayList<>(dictSamples.size());
+        for (final Section section : dictSamples) {
+            samples.add(section.text);
+        }
+        dict = ZstdDictionary.train(splitDir, samples);
+        System.out.println("Trained zstd dictionary on " + samples.size() + " sections of " + path);
+        for (final Selector selector : currentSelectors) {
+            openOutput(selector);
+        }
+        for (final Section section : dictSamples) {
+            section.write();
+        }
+        dictSamples = null;
+    }
+
+    // Updated by writePage(), which sees the pages of all modes in order.
+    volatile String lastPageTitle = null;
     int pageCount = 0;
-    final Matcher[] endPatterns = new Matcher[100];
+    int copiedPages = 0;
+
+    private void endPage(final String title, final String text) {
+        if (pipeline != null) {
+            pipeline.submit(() -> List.of(splitPage(pipeline.splitter(), title, text)));
+            return;
+        }
+        try {
+            writePage(splitPage(sectionSplitter, title, text));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-    private Matcher getEndPattern(int depth) {
-        if (endPatterns[depth] == null)
-            endPatterns[depth] = Pattern.compile(String.format("^={1,%d}[^=].*$", depth), Pattern.MULTILINE).matcher("");
-        return endPatterns[depth];
+    /**
+     * Splits the page, unless it is unchanged since the previous run.
+     * Can be called from any thread.
+     */
+    private SplitPage splitPage(final SectionSplitter splitter, final String title, final String text) {
+        if (manifest == null) return new SplitPage(title, 0, null, splitter.split(title, text));
+        final long textHash = SplitManifest.hash(text);
+        if (previousSplit != null && previousSplit.isUnchanged(title, textHash)) {
+            return new SplitPage(title, textHash, text, null);
+        }
+        return new SplitPage(title, textHash, null, splitter.split(title, text));
     }
 
-    private void endPage() {
-        final String title = titleBuilder.toString();
-        lastPageTitle = title;
+    /** Writes the sections of the page, must be called in page order. */
+    private void writePage(final SplitPage page) throws IOException {
+        lastPageTitle = page.title;
         if (++pageCount % 100000 == 0) {
-            System.out.println("endPage: " + title + ", count=" + pageCount);
-        }
-        if (title.startsWith("Unsupported titles/")) return;
-        if (title.contains(":")) {
-            if (title.startsWith("Wiktionary:") ||
-                title.startsWith("Appendix:") ||
-                title.startsWith("Help:") ||
-                title.startsWith("Index:") ||
-                title.startsWith("MediaWiki:") ||
-                title.startsWith("Citations:") ||
-                title.startsWith("Concordance:") ||
-                title.startsWith("Glossary:") ||
-                title.startsWith("Rhymes:") ||
-                title.startsWith("Category:") ||
-                title.startsWith("Wikisaurus:") ||
-                title.startsWith("Transwiki:") ||
-                title.startsWith("File:") ||
-                title.startsWith("Thread:") ||
-                title.startsWith("Template:") ||
-                title.startsWith("Summary:") ||
-                title.startsWith("Module:") ||
-                title.startsWith("Reconstruction:") ||
-                // DE
-                title.startsWith("Datei:") ||
-                title.startsWith("Verzeichnis:") ||
-                title.startsWith("Vorlage:") ||
-                title.startsWith("Thesaurus:") ||
-                title.startsWith("Kategorie:") ||
-                title.startsWith("Hilfe:") ||
-                title.startsWith("Reim:") ||
-                title.startsWith("Rekonstruktion:") ||
-                title.startsWith("Modul:") ||
-                // FR:
-                title.startsWith("Annexe:") ||
-                title.startsWith("Catégori:") ||
-                title.startsWith("Conjugaison:") ||
-                title.startsWith("Convention:") ||
-                title.startsWith("Modèle:") ||
-                title.startsWith("Thésaurus:") ||
-                title.startsWith("Projet:") ||
-                title.startsWith("Aide:") ||
-                title.startsWith("Fichier:") ||
-                title.startsWith("Wiktionnaire:") ||
-                title.startsWith("Translations:Aide:") ||
-                title.startsWith("Translations:Wiktionnaire:") ||
-                title.startsWith("Translations:Projet:") ||
-                title.startsWith("Catégorie:") ||
-                title.startsWith("Portail:") ||
-                title.startsWith("Racine:") ||
-                title.startsWith("utiliusateur:") ||
-                title.startsWith("Kategorio:") ||
-                title.startsWith("Tutoriel:") ||
-                // IT
-                title.startsWith("Wikizionario:") ||
-                title.startsWith("Appendice:") ||
-                title.startsWith("Categoria:") ||
-                title.startsWith("Aiuto:") ||
-                title.startsWith("Portail:") ||
-                title.startsWith("Modulo:") ||
-                // ES
-                title.startsWith("Apéndice:") ||
-                title.startsWith("Archivo:") ||
-                title.startsWith("Ayuda:") ||
-                title.startsWith("Categoría:") ||
-                title.startsWith("Plantilla:") ||
-                title.startsWith("Wikcionario:") ||
-
-                // PT
-                title.startsWith("Ajuda:") ||
-                title.startsWith("Apêndice:") ||
-                title.startsWith("Citações:") ||
-                title.startsWith("Portal:") ||
-                title.startsWith("Predefinição:") ||
-                title.startsWith("Vocabulário:") ||
-                title.startsWith("Wikcionário:") ||
-                title.startsWith("Módulo:") ||
-
-                // sentinel
-                false
-               ) return;
-            // leave the Flexion: pages in for now and do not warn about them
-            if (!title.startsWith("Sign gloss:") && !title.startsWith("Flexion:")) {
-                System.err.println("title with colon: " + title);
+            System.out.println("endPage: " + page.title + ", count=" + pageCount);
+        }
+        List<Section> sections = page.sections;
+        if (sections == null) {
+            sections = previousSplit.copy(page.title, page.textHash);
+            if (sections != null) {
+                ++copiedPages;
+            } else {
+                sections = sectionSplitter.split(page.title, page.text);
             }
         }
+        if (dictSamples != null) {
+            dictSamples.addAll(sections);
+            for (final Section section : sections) {
+                dictSamplesSize += section.text.length;
+            }
+            if (dictSamplesSize >= ZstdDictionary.SAMPLES_SIZE) trainDictionary();
+        } else {
+            for (final Section section : sections) {
+                section.write();
+            }
+        }
+        if (manifest != null) manifest.add(page.title, page.textHash, sections);
+    }
 
-        String text = textBuilder.toString();
-        // Workaround for Spanish wiktionary {{ES}} and {{ES|word}} patterns
-        text = startSpanish.matcher(text).replaceAll("== {{lengua|es}} ==");
-        String translingual = "";
-        int start = 0;
-        Matcher headingStart = headingStartPattern.matcher(text);
+    /**
+     * Splits pages into per-language sections.
+     * Holds Matchers, so each thread needs its own instance.
+     */
+    static final class SectionSplitter {
+        // Headings of the usual "==Name==" form, nearly all of them.
+        static final Pattern simpleHeading = Pattern.compile("=+([^=]+)=+");
+        static final int MAX_CACHED_NAMES = 100000;
+
+        final List<Selector> selectors;
+        final Set<String> ignoredNamespaces;
+        final Matcher[] selectorMatchers;
+        final Matcher[] endPatterns = new Matcher[100];
+        // Selector index (or -1) found by the regexes for a heading name.
+        // Only used if no selector regex can see more than the name.
+        final Map<String, Integer> nameToSelector;
+        final Matcher simpleHeadingMatcher = simpleHeading.matcher("");
+
+        SectionSplitter(final List<Selector> selectors, final Set<String> ignoredNamespaces) {
+            this.selectors = selectors;
+            this.ignoredNamespaces = ignoredNamespaces;
+            selectorMatchers = new Matcher[selectors.size()];
+            for (int i = 0; i < selectorMatchers.length; ++i) {
+                selectorMatchers[i] = selectors.get(i).pattern.matcher("");
+            }
+            boolean nameOnly = true;
+            for (final Selector selector : selectors) {
+                nameOnly &= !canSeeAroundName(selector.pattern.pattern());
+            }
+            nameToSelector = nameOnly ? new HashMap<>() : null;
+        }
 
-        while (start < text.length()) {
-            // Find start.
-            if (!headingStart.find(start)) {
-                return;
+        /**
+         * Whether the regex might match the '=' or spaces around the name in a
+         * heading or depend on what is around it (anchors, character classes,
+         * escapes like \s).
+         */
+        static boolean canSeeAroundName(final String regex) {
+            // Pattern.quote() result
+            if (regex.startsWith("\\Q") && regex.indexOf("\\E") == regex.length() - 2) {
+                final String literal = regex.substring(2, regex.length() - 2);
+                return literal.contains("=") || !literal.strip().equals(literal);
+            }
+            for (int i = 0; i < regex.length(); ++i) {
+                final char c = regex.charAt(i);
+                if (c == '=' || c == '.' || c == '^' || c == '$' || c == '[') return true;
+                if (c == '\\' && i + 1 < regex.length() && Character.isLetterOrDigit(regex.charAt(i + 1))) return true;
+                // Only spaces inside the name are fine
+                if (Character.isWhitespace(c) && (i == 0 || i == regex.length() - 1 ||
+                        "|(".indexOf(regex.charAt(i - 1)) >= 0 || "|)".indexOf(regex.charAt(i + 1)) >= 0)) return true;
             }
-            start = headingStart.end();
+            return false;
+        }
 
-            final String heading = headingStart.group();
+        /**
+         * Returns the index of the first selector matching the heading, or -1.
+         * The result is cached by the heading's name, so the regexes only
+         * run the first time a language (or other heading) is seen.
+         */
+        private int findSelector(final String heading) {
+            String name = null;
+            if (nameToSelector != null && simpleHeadingMatcher.reset(heading).matches()) {
+                name = simpleHeadingMatcher.group(1).strip();
+                final Integer cached = nameToSelector.get(name);
+                if (cached != null) return cached;
+            }
+            int found = -1;
+            for (int i = 0; i < selectorMatchers.length; ++i) {
+                if (selectorMatchers[i].reset(heading).find()) {
+                    found = i;
+                    break;
+                }
+            }
+            if (name != null && nameToSelector.size() < MAX_CACHED_NAMES) {
+                nameToSelector.put(name, found);
+            }
+            return found;
+        }
+
+        private Matcher getEndPattern(int depth) {
+            if (endPatterns[depth] == null)
+                endPatterns[depth] = Pattern.compile(String.format("^={1,%d}[^=].*$", depth), Pattern.MULTILINE).matcher("");
+            return endPatterns[depth];
+        }
 
-            // For Translingual entries just store the text for later
-            // use in the per-language sections
-            if (heading.contains("Translingual")) {
-                // Find end.
-                final int depth = headingStart.group(1).length();
-                final Matcher endMatcher = getEndPattern(depth).reset(text);
+        // Checks all prefixes ending at a ':', as some namespaces like
+        // "Translations:Aide" contain one themselves.
+        boolean isIgnoredNamespace(final String title) {
+            for (int colon = title.indexOf(':'); colon >= 0; colon = title.indexOf(':', colon + 1)) {
+                if (ignoredNamespaces.contains(title.substring(0, colon))) return true;
+            }
+            return false;
+        }
 
-                if (endMatcher.find(start)) {
-                    int end = endMatcher.start();
-                    translingual = text.substring(start, end);
-                    start = end;
-                    continue;
+        List<Section> split(final String title, String text) {
+            final List<Section> sections = new ArrayList<>();
+            if (title.startsWith("Unsupported titles/")) return sections;
+            if (title.contains(":")) {
+                if (isIgnoredNamespace(title)) return sections;
+                // leave the Flexion: pages in for now and do not warn about them
+                if (!title.startsWith("Sign gloss:") && !title.startsWith("Flexion:")) {
+                    System.err.println("title with colon: " + title);
                 }
             }
 
-            for (final Selector selector : currentSelectors) {
-                if (selector.pattern.reset(heading).find()) {
+            // Workaround for Spanish wiktionary {{ES}} and {{ES|word}} patterns
+            text = startSpanish.matcher(text).replaceAll("== {{lengua|es}} ==");
+            String translingual = "";
+            int start = 0;
+            Matcher headingStart = headingStartPattern.matcher(text);
+
+            while (start < text.length()) {
+                // Find start.
+                if (!headingStart.find(start)) {
+                    return sections;
+                }
+                start = headingStart.end();
+
+                final String heading = headingStart.group();
+
+                // For Translingual entries just store the text for later
+                // use in the per-language sections
+                if (heading.contains("Translingual")) {
+                    // Find end.
+                    final int depth = headingStart.group(1).length();
+                    final Matcher endMatcher = getEndPattern(depth).reset(text);
+
+                    if (endMatcher.find(start)) {
+                        int end = endMatcher.start();
+                        translingual = text.substring(start, end);
+                        start = end;
+                        continue;
+                    }
+                }
+
+                final int i = findSelector(heading);
+                if (i >= 0) {
                     // Find end.
                     final int depth = headingStart.group(1).length();
                     final Matcher endMatcher = getEndPattern(depth).reset(text);
@@ -297,73 +574,273 @@ public class WiktionarySplitter extends org.xml.sax.helpers.DefaultHandler imple
                         sectionText = sectionText.substring(dummy_end);
                     }
                     if (!heading.contains("Japanese")) sectionText += translingual;
-                    try {
-                        selector.out.writeUTF(title);
-                        selector.out.writeUTF(heading);
-                        final byte[] bytes = sectionText.getBytes(StandardCharsets.UTF_8);
-                        selector.out.writeInt(bytes.length);
-                        selector.out.write(bytes);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
+                    sections.add(new Section(selectors.get(i), title, heading, sectionText.getBytes(StandardCharsets.UTF_8)));
 
                     start = end;
-                    break;
                 }
             }
+            return sections;
         }
-
     }
 
     static class Selector {
         final String outFilename;
-        final Matcher pattern;
+        final Pattern pattern;
 
         DataOutputStream out;
+        // Only with the 'chunked' output, out writes to it.
+        ChunkedSplitFile.Writer chunks;
 
         public Selector(final String filename, final String pattern) {
             this.outFilename = filename;
-            this.pattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher("");
+            this.pattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    static final class Section {
+        final Selector selector;
+        final String title;
+        final String heading;
+        final byte[] text;
+
+        Section(final Selector selector, final String title, final String heading, final byte[] text) {
+            this.selector = selector;
+            this.title = title;
+            this.heading = heading;
+            this.text = text;
+        }
+
+        void write() throws IOException {
+            selector.out.writeUTF(title);
+            selector.out.writeUTF(heading);
+            selector.out.writeInt(text.length);
+            selector.out.write(text);
+            if (selector.chunks != null) selector.chunks.endRecord(title);
+        }
+    }
+
+    /**
+     * The sections of one page. For pages unchanged since the previous run
+     * only the text is kept, the sections are copied when writing.
+     */
+    static final class SplitPage {
+        final String title;
+        final long textHash;
+        final String text;
+        final List<Section> sections;
+
+        SplitPage(final String title, final long textHash, final String text, final List<Section> sections) {
+            this.title = title;
+            this.textHash = textHash;
+            this.text = text;
+            this.sections = sections;
+        }
+    }
+
+    /**
+     * Runs the section splitting on a pool of worker threads, while a single
+     * writer thread stores the results in the original page order, so the
+     * output is identical to the serial one.
+     * The queue between the stages is bounded to limit the memory use.
+     */
+    static final class SplitPipeline {
+        private static final Future<List<SplitPage>> END = CompletableFuture.completedFuture(null);
+
+        interface PageWriter {
+            void write(SplitPage page) throws IOException;
+        }
+
+        private final ExecutorService workers;
+        private final ThreadLocal<SectionSplitter> splitters;
+        private final BlockingQueue<Future<List<SplitPage>>> pending;
+        private final PageWriter writer;
+        private final Thread writeThread;
+        private volatile Exception error = null;
+
+        SplitPipeline(final List<Selector> selectors, final Set<String> ignoredNamespaces, final int threads, final int maxPending,
+                      final PageWriter writer) {
+            this.writer = writer;
+            workers = Executors.newFixedThreadPool(threads);
+            splitters = ThreadLocal.withInitial(() -> new SectionSplitter(selectors, ignoredNamespaces));
+            pending = new ArrayBlockingQueue<>(maxPending);
+            writeThread = new Thread(this::writeLoop, "SplitPipeline writer");
+            writeThread.start();
+        }
+
+        SectionSplitter splitter() {
+            return splitters.get();
+        }
+
+        void submit(final Callable<List<SplitPage>> task) {
+            if (error != null) {
+                throw new RuntimeException("Writing split output failed", error);
+            }
+            try {
+                pending.put(workers.submit(task));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                Future<List<SplitPage>> next;
+                while ((next = pending.take()) != END) {
+                    // Keep draining after an error so submit() cannot block forever.
+                    if (error != null) continue;
+                    try {
+                        for (final SplitPage page : next.get()) {
+                            writer.write(page);
+                        }
+                    } catch (ExecutionException e) {
+                        error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (error == null) error = e;
+            }
+        }
+
+        /** Waits for all submitted pages to be written. */
+        void finish() throws Exception {
+            pending.put(END);
+            writeThread.join();
+            workers.shutdown();
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        void abort() {
+            workers.shutdownNow();
+            writeThread.interrupt();
         }
     }
 
     // -----------------------------------------------------------------------
 
-    @Override
-    public void startElement(String uri, String localName, String qName,
-                             Attributes attributes) {
-        currentBuilder = null;
-        if ("page".equals(qName)) {
-            titleBuilder = new StringBuilder();
-
-            // Start with "\n" to better match certain strings.
-            textBuilder = new StringBuilder("\n");
-        } else if ("title".equals(qName)) {
-            currentBuilder = titleBuilder;
-        } else if ("text".equals(qName)) {
-            currentBuilder = textBuilder;
+    /**
+     * Splits a pages-articles-multistream dump using its index.
+     * The dump is a series of bzip2 streams of 100 pages each, preceded by
+     * one with the siteinfo header, and the index lists the byte offset of
+     * the stream containing each page.
+     * Ranges of streams are decompressed, parsed and split in parallel,
+     * the pipeline then writes the results in page order.
+     */
+    private void splitMultistream(final File input, final File index) throws Exception {
+        final List<Long> offsets = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(index)), true), StandardCharsets.UTF_8))) {
+            String line;
+            long last = -1;
+            while ((line = reader.readLine()) != null) {
+                final long offset = Long.parseLong(line.substring(0, line.indexOf(':')));
+                if (offset != last) {
+                    offsets.add(offset);
+                    last = offset;
+                }
+            }
+        }
+        System.out.println("Splitting " + input + ": " + offsets.size() + " streams");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input))) {
+            // Skip the siteinfo header
+            in.skipNBytes(offsets.get(0));
+            for (int i = 0; i < offsets.size(); i += MULTISTREAM_CHUNK) {
+                final long start = offsets.get(i);
+                final long end = i + MULTISTREAM_CHUNK < offsets.size() ? offsets.get(i + MULTISTREAM_CHUNK) : input.length();
+                final byte[] compressed = in.readNBytes(Math.toIntExact(end - start));
+                if (compressed.length != end - start) {
+                    throw new IOException("Unexpected end of " + input + " at " + (start + compressed.length));
+                }
+                pipeline.submit(() -> splitStreams(compressed));
+            }
         }
     }
 
-    @Override
-    public void characters(char[] ch, int start, int length) {
-        if (currentBuilder != null) {
-            currentBuilder.append(ch, start, length);
+    private List<SplitPage> splitStreams(final byte[] compressed) throws Exception {
+        byte[] xml;
+        try (InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+            xml = in.readAllBytes();
         }
+        // The streams only contain <page> elements, except for the last one
+        // which also has the closing </mediawiki>.
+        int xmlEnd = xml.length;
+        while (xmlEnd > 0 && Character.isWhitespace(xml[xmlEnd - 1])) --xmlEnd;
+        final byte[] footer = "</mediawiki>".getBytes(StandardCharsets.UTF_8);
+        if (xmlEnd >= footer.length && Arrays.equals(xml, xmlEnd - footer.length, xmlEnd, footer, 0, footer.length)) {
+            xmlEnd -= footer.length;
+        }
+        final InputStream wrapped = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream("<mediawiki>".getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(xml, 0, xmlEnd),
+                new ByteArrayInputStream(footer))));
+
+        final SectionSplitter splitter = pipeline.splitter();
+        final List<SplitPage> pages = new ArrayList<>();
+        parsePages(wrapped, new PageHandler((title, text) -> pages.add(splitPage(splitter, title, text))));
+        return pages;
     }
 
-    @Override
-    public void endElement(String uri, String localName, String qName) {
-        currentBuilder = null;
-        if ("page".equals(qName)) {
-            endPage();
+    private void parsePages(final InputStream in, final PageHandler handler) throws Exception {
+        if (byteParser) {
+            new XmlPageExtractor(in).parse(handler.onPage);
+        } else {
+            SAXParserFactory.newInstance().newSAXParser().parse(new BufferedInputStream(in), handler);
+        }
+    }
+
+    /**
+     * Collects title and text of every page from the SAX events.
+     */
+    static final class PageHandler extends DefaultHandler {
+        final BiConsumer<String, String> onPage;
+
+        StringBuilder titleBuilder;
+        StringBuilder textBuilder;
+        StringBuilder currentBuilder = null;
+
+        PageHandler(final BiConsumer<String, String> onPage) {
+            this.onPage = onPage;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attributes) {
+            currentBuilder = null;
+            if ("page".equals(qName)) {
+                titleBuilder = new StringBuilder();
+
+                // Start with "\n" to better match certain strings.
+                textBuilder = new StringBuilder("\n");
+            } else if ("title".equals(qName)) {
+                currentBuilder = titleBuilder;
+            } else if ("text".equals(qName)) {
+                currentBuilder = textBuilder;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (currentBuilder != null) {
+                currentBuilder.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            currentBuilder = null;
+            if ("page".equals(qName)) {
+                onPage.accept(titleBuilder.toString(), textBuilder.toString());
+            }
         }
     }
 
     public void parse(final File file) throws ParserConfigurationException,
         SAXException, IOException {
         final SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-        parser.parse(file, this);
+        parser.parse(file, pageHandler);
     }
 
 }
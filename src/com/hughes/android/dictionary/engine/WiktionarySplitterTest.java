@@ -0,0 +1,147 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hughes.android.dictionary.parser.wiktionary.WiktionaryLangs;
+
+import junit.framework.TestCase;
+
+public class WiktionarySplitterTest extends TestCase {
+
+    // The title filter as it was before the per-wiki tables.
+    private static boolean oldIsIgnored(final String title) {
+        return title.startsWith("Wiktionary:") ||
+               title.startsWith("Appendix:") ||
+               title.startsWith("Help:") ||
+               title.startsWith("Index:") ||
+               title.startsWith("MediaWiki:") ||
+               title.startsWith("Citations:") ||
+               title.startsWith("Concordance:") ||
+               title.startsWith("Glossary:") ||
+               title.startsWith("Rhymes:") ||
+               title.startsWith("Category:") ||
+               title.startsWith("Wikisaurus:") ||
+               title.startsWith("Transwiki:") ||
+               title.startsWith("File:") ||
+               title.startsWith("Thread:") ||
+               title.startsWith("Template:") ||
+               title.startsWith("Summary:") ||
+               title.startsWith("Module:") ||
+               title.startsWith("Reconstruction:") ||
+               // DE
+               title.startsWith("Datei:") ||
+               title.startsWith("Verzeichnis:") ||
+               title.startsWith("Vorlage:") ||
+               title.startsWith("Thesaurus:") ||
+               title.startsWith("Kategorie:") ||
+               title.startsWith("Hilfe:") ||
+               title.startsWith("Reim:") ||
+               title.startsWith("Rekonstruktion:") ||
+               title.startsWith("Modul:") ||
+               // FR:
+               title.startsWith("Annexe:") ||
+               title.startsWith("Catégori:") ||
+               title.startsWith("Conjugaison:") ||
+               title.startsWith("Convention:") ||
+               title.startsWith("Modèle:") ||
+               title.startsWith("Thésaurus:") ||
+               title.startsWith("Projet:") ||
+               title.startsWith("Aide:") ||
+               title.startsWith("Fichier:") ||
+               title.startsWith("Wiktionnaire:") ||
+               title.startsWith("Translations:Aide:") ||
+               title.startsWith("Translations:Wiktionnaire:") ||
+               title.startsWith("Translations:Projet:") ||
+               title.startsWith("Catégorie:") ||
+               title.startsWith("Portail:") ||
+               title.startsWith("Racine:") ||
+               title.startsWith("utiliusateur:") ||
+               title.startsWith("Kategorio:") ||
+               title.startsWith("Tutoriel:") ||
+               // IT
+               title.startsWith("Wikizionario:") ||
+               title.startsWith("Appendice:") ||
+               title.startsWith("Categoria:") ||
+               title.startsWith("Aiuto:") ||
+               title.startsWith("Portail:") ||
+               title.startsWith("Modulo:") ||
+               // ES
+               title.startsWith("Apéndice:") ||
+               title.startsWith("Archivo:") ||
+               title.startsWith("Ayuda:") ||
+               title.startsWith("Categoría:") ||
+               title.startsWith("Plantilla:") ||
+               title.startsWith("Wikcionario:") ||
+               // PT
+               title.startsWith("Ajuda:") ||
+               title.startsWith("Apêndice:") ||
+               title.startsWith("Citações:") ||
+               title.startsWith("Portal:") ||
+               title.startsWith("Predefinição:") ||
+               title.startsWith("Vocabulário:") ||
+               title.startsWith("Wikcionário:") ||
+               title.startsWith("Módulo:");
+    }
+
+    public void testIgnoredNamespaces() {
+        // Titles as they appear in the dumps of each wiki.
+        final Map<String, List<String>> wikiCodeToTitles = new LinkedHashMap<>();
+        wikiCodeToTitles.put("en", Arrays.asList(
+                "Wiktionary:Main Page", "Appendix:Glossary", "Help:Contents", "Index:German",
+                "MediaWiki:Common.css", "Citations:dog", "Concordance:Hamlet", "Rhymes:English/ɒɡ",
+                "Category:English nouns", "Thesaurus:dog", "Wikisaurus:dog", "Transwiki:Pokémon",
+                "File:Dog.jpg", "Template:en-noun", "Module:headword", "Reconstruction:Proto-Germanic/hundaz",
+                "Sign gloss:THANK YOU", "A:", "C:\\", "Re:", "dog"));
+        wikiCodeToTitles.put("de", Arrays.asList(
+                "Wiktionary:Hauptseite", "Datei:Hund.jpg", "Verzeichnis:Deutsch", "Vorlage:Deutsch Substantiv Übersicht",
+                "Thesaurus:Hund", "Kategorie:Deutsch", "Hilfe:Formatvorlage", "Reim:Deutsch:-ʊnt",
+                "Rekonstruktion:Urgermanisch/hundaz", "Modul:Wiktionary", "MediaWiki:Common.css",
+                "Flexion:Hund", "Hund"));
+        wikiCodeToTitles.put("fr", Arrays.asList(
+                "Wiktionnaire:Page d’accueil", "Annexe:Couleurs en français", "Conjugaison:français/aller",
+                "Convention:Langues", "Modèle:S", "Thésaurus:chien/français", "Projet:Étymologie",
+                "Aide:Sommaire", "Fichier:Chien.jpg", "Translations:Aide:Sommaire/1/en",
+                "Translations:Wiktionnaire:Bot/1/en", "Translations:Projet:Outils/2/de", "Catégorie:Noms communs en français",
+                "Portail:Informatique", "Racine:arabe/k-t-b", "Tutoriel:Créer une page", "Reconstruction:indo-européen commun/*ḱwṓ",
+                "Transwiki:Chien", "Module:langues", "MediaWiki:Common.css", "chien"));
+        wikiCodeToTitles.put("it", Arrays.asList(
+                "Wikizionario:Pagina principale", "Appendice:Coniugazioni", "Categoria:Sostantivi in italiano",
+                "Aiuto:Aiuto", "Modulo:Lingue", "Template:-it-", "File:Cane.jpg", "MediaWiki:Common.css",
+                "cane"));
+        wikiCodeToTitles.put("es", Arrays.asList(
+                "Wikcionario:Portada", "Apéndice:Español/Conjugación", "Archivo:Perro.jpg", "Ayuda:Contenidos",
+                "Categoría:ES:Sustantivos", "Plantilla:ES", "Módulo:lenguas", "MediaWiki:Common.css",
+                "perro"));
+        wikiCodeToTitles.put("pt", Arrays.asList(
+                "Wikcionário:Página principal", "Ajuda:Conteúdos", "Apêndice:Conjugação", "Categoria:Substantivo (Português)",
+                "Citações:cão", "Portal:Português", "Predefinição:-pt-", "Vocabulário:Cores", "Módulo:lang",
+                "MediaWiki:Common.css", "cão"));
+
+        for (final Map.Entry<String, List<String>> entry : wikiCodeToTitles.entrySet()) {
+            final WiktionarySplitter.SectionSplitter splitter = new WiktionarySplitter.SectionSplitter(
+                    Collections.emptyList(), WiktionaryLangs.getIgnoredNamespaces(entry.getKey()));
+            for (final String title : entry.getValue()) {
+                assertEquals(entry.getKey() + " " + title, oldIsIgnored(title), splitter.isIgnoredNamespace(title));
+            }
+        }
+    }
+
+}
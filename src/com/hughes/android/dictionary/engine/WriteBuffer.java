@@ -15,49 +15,172 @@
 package com.hughes.android.dictionary.engine;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes to the output (usually a compressor) in the background, with up
+ * to size bytes pending.
+ * The data is collected in blocks that the threads of a shared executor
+ * write in order, so many WriteBuffers (like the hundreds of split files
+ * of WiktionarySplitter) do not need a thread each. The blocks are reused
+ * through a shared pool.
+ * A failed write is thrown by a following write() (once it needs a new
+ * block), flush() or close().
+ */
+public class WriteBuffer extends OutputStream {
+    static int BLOCK_SIZE = 64 * 1024;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    // Mostly busy compressing, so one per core.
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                final Thread thread = new Thread(r, "WriteBuffer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    // Free blocks, only up to a limit so a burst does not keep memory forever.
+    private static final Queue<byte[]> pool = new ArrayBlockingQueue<>(256);
+
+    private final OutputStream out;
+    private final int maxBlocks;
+    // Taken for each block written, so at most maxBlocks are pending.
+    private final Semaphore permits;
+    private final Queue<Block> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile IOException error = null;
+    private byte[] current = null;
+    private int length = 0;
+    private boolean closed = false;
+
+    private static final class Block {
+        final byte[] data;
+        final int length;
+
+        Block(final byte[] data, final int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
 
-public class WriteBuffer extends PipedOutputStream {
-    static int BLOCK_SIZE = 256 * 1024;
     public WriteBuffer(OutputStream out, int size) {
-        assert size >= 2 * BLOCK_SIZE;
         this.out = out;
+        maxBlocks = Math.max(2, size / BLOCK_SIZE);
+        permits = new Semaphore(maxBlocks);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (current == null || length == current.length) {
+            nextBlock();
+        }
+        current[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null || length == current.length) {
+                nextBlock();
+            }
+            final int n = Math.min(len, current.length - length);
+            System.arraycopy(b, off, current, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void nextBlock() throws IOException {
+        checkError();
+        if (closed) throw new IOException("WriteBuffer closed");
+        submit();
+        current = pool.poll();
+        if (current == null) current = new byte[BLOCK_SIZE];
+    }
+
+    private void submit() throws IOException {
+        if (current == null || length == 0) return;
         try {
-            pipe = new PipedInputStream(this, size);
-            buffer = new byte[BLOCK_SIZE];
-            writeThread = new Thread(() -> {
-                int read;
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        pending.add(new Block(current, length));
+        current = null;
+        length = 0;
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    // Runs on the executor, at most one at a time per WriteBuffer.
+    private void drain() {
+        do {
+            Block block;
+            while ((block = pending.poll()) != null) {
                 try {
-                    while ((read = pipe.read(buffer)) > 0)
-                    {
-                        out.write(buffer, 0, read);
-                        out.flush();
-                    }
+                    if (error == null) out.write(block.data, 0, block.length);
                 } catch (IOException e) {
-                    System.out.println("Error writing to file " + e);
+                    error = e;
+                } catch (Throwable e) {
+                    // Also keep draining, otherwise the writer might wait forever.
+                    error = new IOException(e);
+                } finally {
+                    pool.offer(block.data);
+                    permits.release();
                 }
-                try {
-                    out.close();
-                } catch (IOException e) {}
-            });
-            writeThread.start();
-        } catch (IOException e) {}
+            }
+            draining.set(false);
+            // A block might have been added after the poll() returned null.
+        } while (!pending.isEmpty() && draining.compareAndSet(false, true));
     }
 
-    public void close() throws IOException
-    {
-        super.close();
+    /** Waits until all submitted blocks are written. */
+    private void await() throws IOException {
         try {
-            writeThread.join();
+            permits.acquire(maxBlocks);
         } catch (InterruptedException e) {
-            System.out.println("Failed waiting for WriteBuffer thread " + e);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
         }
+        permits.release(maxBlocks);
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) throw new IOException("Writing failed", error);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) return;
+        submit();
+        await();
+        checkError();
+        out.flush();
     }
 
-    Thread writeThread;
-    OutputStream out;
-    PipedInputStream pipe;
-    byte[] buffer;
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            submit();
+            await();
+        } finally {
+            closed = true;
+            if (current != null) pool.offer(current);
+            current = null;
+            out.close();
+        }
+        checkError();
+    }
 }
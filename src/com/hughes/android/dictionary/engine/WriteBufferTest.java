@@ -0,0 +1,194 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+public class WriteBufferTest extends TestCase {
+
+    // Records the data and at which size flush() and close() were called,
+    // fails with error once more than failAfter bytes were written.
+    static final class TestOutputStream extends OutputStream {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final List<String> events = new ArrayList<>();
+        private final long failAfter;
+        private final Exception error;
+        private volatile Thread writer = null;
+
+        TestOutputStream(final long failAfter, final Exception error) {
+            this.failAfter = failAfter;
+            this.error = error;
+        }
+
+        @Override
+        public void write(final int b) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            // The blocks of one WriteBuffer must not be written at the same time
+            assertNull(writer);
+            writer = Thread.currentThread();
+            try {
+                if (data.size() + len > failAfter) {
+                    if (error instanceof IOException) throw (IOException) error;
+                    throw (RuntimeException) error;
+                }
+                data.write(b, off, len);
+            } finally {
+                writer = null;
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            events.add("flush " + data.size());
+        }
+
+        @Override
+        public synchronized void close() {
+            events.add("close " + data.size());
+        }
+    }
+
+    private static byte[] data(final int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    // In pieces of random size, some as single bytes
+    private static void write(final OutputStream out, final byte[] data, final Random random) throws IOException {
+        int pos = 0;
+        while (pos < data.length) {
+            if (random.nextInt(10) == 0) {
+                out.write(data[pos++]);
+                continue;
+            }
+            final int n = Math.min(data.length - pos, random.nextInt(3 * WriteBuffer.BLOCK_SIZE));
+            out.write(data, pos, n);
+            pos += n;
+        }
+    }
+
+    public void testOrderAndFlush() throws IOException {
+        final byte[] data = data(1000000);
+        final TestOutputStream out = new TestOutputStream(Long.MAX_VALUE, null);
+        final Random random = new Random(0);
+        try (WriteBuffer buffer = new WriteBuffer(out, 0)) {
+            write(buffer, Arrays.copyOfRange(data, 0, 300000), random);
+            buffer.flush();
+            // All data before the flush() is written when it returns
+            assertEquals(Arrays.asList("flush 300000"), out.events);
+            write(buffer, Arrays.copyOfRange(data, 300000, data.length), random);
+        }
+        assertEquals(Arrays.asList("flush 300000", "close 1000000"), out.events);
+        assertTrue(Arrays.equals(data, out.data.toByteArray()));
+    }
+
+    // Many buffers share the executor and the block pool.
+    public void testManyBuffers() throws Exception {
+        final ExecutorService writers = Executors.newFixedThreadPool(8);
+        final List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            final int n = i;
+            results.add(writers.submit(() -> {
+                final byte[] data = data(n * 10007);
+                final TestOutputStream out = new TestOutputStream(Long.MAX_VALUE, null);
+                try (WriteBuffer buffer = new WriteBuffer(out, n * 1000)) {
+                    write(buffer, data, new Random(n));
+                }
+                assertTrue(Arrays.equals(data, out.data.toByteArray()));
+                return null;
+            }));
+        }
+        writers.shutdown();
+        for (final Future<?> result : results) {
+            result.get();
+        }
+    }
+
+    public void testWriteFailure() throws IOException {
+        final IOException error = new IOException("disk full");
+        final TestOutputStream out = new TestOutputStream(100000, error);
+        final WriteBuffer buffer = new WriteBuffer(out, 0);
+        final byte[] data = data(WriteBuffer.BLOCK_SIZE);
+        try {
+            // Only fails once a later block needs the pending ones written
+            for (int i = 0; i < 100; ++i) {
+                buffer.write(data);
+            }
+            fail("no exception from write()");
+        } catch (IOException e) {
+            assertSame(error, e.getCause());
+        }
+        try {
+            buffer.flush();
+            fail("no exception from flush()");
+        } catch (IOException e) {
+            assertSame(error, e.getCause());
+        }
+        try {
+            buffer.close();
+            fail("no exception from close()");
+        } catch (IOException e) {
+            assertSame(error, e.getCause());
+        }
+        // The output is still closed, and only once
+        assertEquals(Arrays.asList("close " + WriteBuffer.BLOCK_SIZE), out.events);
+        buffer.close();
+        assertEquals(1, out.events.size());
+    }
+
+    public void testRuntimeFailure() {
+        final RuntimeException error = new IllegalStateException("bug");
+        final TestOutputStream out = new TestOutputStream(10, error);
+        try {
+            try (WriteBuffer buffer = new WriteBuffer(out, 0)) {
+                buffer.write(data(100));
+            }
+            fail("no exception from close()");
+        } catch (IOException e) {
+            assertSame(error, e.getCause().getCause());
+        }
+    }
+
+    public void testWriteAfterClose() throws IOException {
+        final TestOutputStream out = new TestOutputStream(Long.MAX_VALUE, null);
+        final WriteBuffer buffer = new WriteBuffer(out, 0);
+        buffer.write(1);
+        buffer.close();
+        try {
+            buffer.write(2);
+            fail("write after close");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, out.data.size());
+    }
+
+}
@@ -0,0 +1,291 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Extracts title and text of the pages of a MediaWiki XML dump directly
+ * from the UTF-8 bytes, as a faster alternative to WiktionarySplitter's
+ * SAX handler.
+ * Only the content of the title and text elements is unescaped, everything
+ * else is just skipped over. The results are the same as from SAX, including
+ * the line ending normalization and the "\n" the text starts with.
+ */
+final class XmlPageExtractor {
+    private static final byte[] PAGE = "page".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TITLE = "title".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT = "text".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final byte[] buf = new byte[1024 * 1024];
+    private int pos = 0;
+    private int len = 0;
+
+    // Reused for all pages.
+    private final ByteBuilder title = new ByteBuilder();
+    private final ByteBuilder text = new ByteBuilder();
+    private final ByteBuilder name = new ByteBuilder();
+    private ByteBuilder current = null;
+
+    XmlPageExtractor(final InputStream in) {
+        this.in = in;
+    }
+
+    void parse(final BiConsumer<String, String> onPage) throws IOException {
+        while (true) {
+            if (current == null) {
+                if (!skipTo('<')) return;
+            } else {
+                if (!copyContent()) throw new IOException("Unexpected end of XML in element content");
+            }
+            // Now at '<'
+            ++pos;
+            final int c = peek();
+            if (c == '/') {
+                ++pos;
+                readName();
+                skipTo('>');
+                ++pos;
+                current = null;
+                if (name.equals(PAGE)) {
+                    onPage.accept(title.toString(), text.toString());
+                }
+            } else if (c == '?') {
+                skipPast("?>");
+            } else if (c == '!') {
+                ++pos;
+                if (startsWith("--")) {
+                    skipPast("-->");
+                } else if (startsWith("[CDATA[")) {
+                    pos += 7;
+                    copyCData();
+                } else {
+                    skipTo('>');
+                    ++pos;
+                }
+            } else {
+                readName();
+                final boolean selfClosing = skipAttributes();
+                current = null;
+                if (name.equals(PAGE)) {
+                    title.clear();
+                    text.clear();
+                    // Start with "\n" to better match certain strings.
+                    text.append('\n');
+                    if (selfClosing) onPage.accept(title.toString(), text.toString());
+                } else if (!selfClosing && name.equals(TITLE)) {
+                    current = title;
+                } else if (!selfClosing && name.equals(TEXT)) {
+                    current = text;
+                }
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < len) return true;
+        pos = 0;
+        len = in.read(buf);
+        if (len <= 0) {
+            len = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int peek() throws IOException {
+        return fill() ? buf[pos] & 0xff : -1;
+    }
+
+    private int next() throws IOException {
+        return fill() ? buf[pos++] & 0xff : -1;
+    }
+
+    private boolean skipTo(final int c) throws IOException {
+        while (fill()) {
+            for (int i = pos; i < len; ++i) {
+                if (buf[i] == c) {
+                    pos = i;
+                    return true;
+                }
+            }
+            pos = len;
+        }
+        return false;
+    }
+
+    private void skipPast(final String end) throws IOException {
+        int matched = 0;
+        while (matched < end.length()) {
+            final int c = next();
+            if (c < 0) throw new IOException("Unexpected end of XML looking for " + end);
+            matched = c == end.charAt(matched) ? matched + 1 : (c == end.charAt(0) ? 1 : 0);
+        }
+    }
+
+    private boolean startsWith(final String s) throws IOException {
+        if (len - pos < s.length()) {
+            // Rare, just move the rest to the start of the buffer
+            System.arraycopy(buf, pos, buf, 0, len - pos);
+            len -= pos;
+            pos = 0;
+            int read;
+            while (len < s.length() && (read = in.read(buf, len, buf.length - len)) > 0) {
+                len += read;
+            }
+            if (len < s.length()) return false;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            if (buf[pos + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void readName() throws IOException {
+        name.clear();
+        int c;
+        while ((c = peek()) >= 0 && c != '>' && c != '/' && c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+            name.append(c);
+            ++pos;
+        }
+    }
+
+    /** Skips to after the '>' of a start tag, returns whether it was self-closing. */
+    private boolean skipAttributes() throws IOException {
+        int quote = 0;
+        int last = 0;
+        int c;
+        while ((c = next()) >= 0) {
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return last == '/';
+            }
+            last = c;
+        }
+        throw new IOException("Unexpected end of XML in start tag");
+    }
+
+    /** Copies element content to current until the next '<', unescaping on the way. */
+    private boolean copyContent() throws IOException {
+        while (fill()) {
+            int i = pos;
+            while (i < len && buf[i] != '<' && buf[i] != '&' && buf[i] != '\r') ++i;
+            current.append(buf, pos, i - pos);
+            pos = i;
+            if (i == len) continue;
+            if (buf[i] == '<') return true;
+            ++pos;
+            if (buf[i] == '&') {
+                unescape();
+            } else {
+                newline();
+            }
+        }
+        return false;
+    }
+
+    private void copyCData() throws IOException {
+        int c;
+        while ((c = next()) >= 0) {
+            if (c == ']' && startsWith("]>")) {
+                pos += 2;
+                return;
+            }
+            if (current == null) continue;
+            if (c == '\r') {
+                newline();
+            } else {
+                current.append(c);
+            }
+        }
+        throw new IOException("Unexpected end of XML in CDATA");
+    }
+
+    // XML turns \r\n and a single \r into \n.
+    private void newline() throws IOException {
+        if (peek() == '\n') ++pos;
+        current.append('\n');
+    }
+
+    private void unescape() throws IOException {
+        name.clear();
+        int c;
+        while ((c = next()) != ';') {
+            if (c < 0 || name.length() > 10) throw new IOException("Invalid XML entity &" + name);
+            name.append(c);
+        }
+        final String entity = name.toString();
+        switch (entity) {
+            case "lt" -> current.append('<');
+            case "gt" -> current.append('>');
+            case "amp" -> current.append('&');
+            case "quot" -> current.append('"');
+            case "apos" -> current.append('\'');
+            default -> {
+                if (!entity.startsWith("#")) throw new IOException("Unknown XML entity &" + entity + ";");
+                final int codePoint = entity.startsWith("#x")
+                        ? Integer.parseInt(entity.substring(2), 16)
+                        : Integer.parseInt(entity.substring(1));
+                current.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    static final class ByteBuilder {
+        private byte[] bytes = new byte[64 * 1024];
+        private int length = 0;
+
+        void clear() {
+            length = 0;
+        }
+
+        int length() {
+            return length;
+        }
+
+        void append(final int b) {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            bytes[length++] = (byte) b;
+        }
+
+        void append(final byte[] b, final int off, final int count) {
+            if (length + count > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + count));
+            System.arraycopy(b, off, bytes, length, count);
+            length += count;
+        }
+
+        void appendCodePoint(final int codePoint) {
+            final byte[] utf8 = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+            append(utf8, 0, utf8.length);
+        }
+
+        boolean equals(final byte[] other) {
+            return Arrays.equals(bytes, 0, length, other, 0, other.length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
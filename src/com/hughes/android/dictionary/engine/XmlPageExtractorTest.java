@@ -0,0 +1,133 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+public class XmlPageExtractorTest extends TestCase {
+
+    static final String XML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <mediawiki xmlns="http://www.mediawiki.org/xml/export-0.11/" xml:lang="en">
+              <siteinfo>
+                <sitename>Wiktionary</sitename>
+                <!-- a <comment> with <title>fake</title> in it -->
+              </siteinfo>
+              <page>
+                <title>entities &amp; more</title>
+                <ns>0</ns>
+                <revision>
+                  <id>1</id>
+                  <text bytes="100" xml:space="preserve">==English==
+            &lt;ref&gt;a &amp;amp; b&lt;/ref&gt; &quot;q&quot; &apos;a&apos; &#65;&#x263A;&#x1F600; äöü 日本語</text>
+                </revision>
+              </page>
+              <page>
+                <title>cdata</title>
+                <revision>
+                  <text xml:space="preserve">before <![CDATA[<b>&amp;</b> ]] ]>]]> after</text>
+                </revision>
+              </page>
+              <page>
+                <title>empty</title>
+                <redirect title="elsewhere" />
+                <revision>
+                  <text bytes="0" />
+                </revision>
+              </page>
+              <page>
+                <title>empty2</title>
+                <revision>
+                  <text/>
+                </revision>
+              </page>
+              <page>
+                <title>attributes</title>
+                <revision>
+                  <comment>a > b</comment>
+                  <text note="a>b" other='"/>'>text</text>
+                </revision>
+              </page>
+              <page>
+                <title>line endings</title>
+                <revision>
+                  <text>a\r\nb\rc\n\rd\r\r\ne</text>
+                </revision>
+              </page>
+              <page>
+                <title>Talk:no text</title>
+              </page>
+            </mediawiki>
+            """;
+
+    // Returns at most a few bytes per read, so that everything crosses buffer ends.
+    static final class TrickleInputStream extends FilterInputStream {
+        private int next = 0;
+
+        TrickleInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            next = (next + 1) % 4;
+            return super.read(b, off, Math.min(len, next + 1));
+        }
+    }
+
+    private static List<String> saxPages(final byte[] xml) throws Exception {
+        final List<String> pages = new ArrayList<>();
+        SAXParserFactory.newInstance().newSAXParser().parse(new ByteArrayInputStream(xml),
+                new WiktionarySplitter.PageHandler((title, text) -> pages.add(title + "|" + text)));
+        return pages;
+    }
+
+    private static List<String> extractedPages(final InputStream in) throws IOException {
+        final List<String> pages = new ArrayList<>();
+        new XmlPageExtractor(in).parse((title, text) -> pages.add(title + "|" + text));
+        return pages;
+    }
+
+    public void testSameAsSax() throws Exception {
+        final byte[] xml = XML.getBytes(StandardCharsets.UTF_8);
+        final List<String> expected = saxPages(xml);
+        assertEquals(7, expected.size());
+        assertEquals("empty|\n", expected.get(2));
+        assertEquals("empty2|\n", expected.get(3));
+        assertEquals(expected, extractedPages(new ByteArrayInputStream(xml)));
+        assertEquals(expected, extractedPages(new TrickleInputStream(new ByteArrayInputStream(xml))));
+    }
+
+    public void testTruncated() {
+        final String xml = XML.substring(0, XML.indexOf("after</text>"));
+        try {
+            extractedPages(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            fail("no error for truncated XML");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Shared zstd dictionary for the .zst split files of one wiki, stored
+ * next to them. commons-compress has no dictionary support, so this uses
+ * zstd-jni directly through ZstdJniCodec. That class is only compiled when
+ * zstd-jni is there (see compile.sh) and only loaded when zstd is
+ * actually used, so everything else builds and runs without zstd-jni.
+ */
+public final class ZstdDictionary {
+    public static final String FILE_NAME = "sections.zstdict";
+
+    // zstd's default size, ~100 times that is recommended for the samples.
+    static final int DICT_SIZE = 112640;
+    static final int SAMPLES_SIZE = 100 * DICT_SIZE;
+
+    /** The zstd-jni calls, implemented by ZstdJniCodec. */
+    interface Codec {
+        /** Returns null if there are too few samples. */
+        byte[] train(List<byte[]> samples, int samplesSize, int dictSize);
+
+        OutputStream compress(OutputStream out, int level, byte[] dict) throws IOException;
+
+        InputStream decompress(InputStream in, byte[] dict) throws IOException;
+    }
+
+    private static Codec codec = null;
+
+    private ZstdDictionary() {
+    }
+
+    private static synchronized Codec codec() throws IOException {
+        if (codec == null) {
+            try {
+                // Also fails if ZstdJniCodec was compiled but the jar is missing now
+                Class.forName("com.github.luben.zstd.ZstdOutputStream");
+                codec = (Codec) Class.forName("com.hughes.android.dictionary.engine.ZstdJniCodec")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IOException("zstd needs zstd-jni, see compile.sh", e);
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * Whether zstd-jni was there at compile time and is there now. Without
+     * it there is no zstd at all, commons-compress uses it as well.
+     */
+    static boolean isAvailable() {
+        try {
+            codec();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** The dictionary for the split files in dir, or null if there is none. */
+    public static byte[] load(final File dir) throws IOException {
+        final File file = new File(dir, FILE_NAME);
+        return file.exists() ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    /**
+     * Trains a dictionary on the samples and stores it in dir.
+     * Returns null (and stores nothing) if there are too few samples.
+     */
+    static byte[] train(final File dir, final List<byte[]> samples) throws IOException {
+        final byte[] dict = codec().train(samples, SAMPLES_SIZE, DICT_SIZE);
+        if (dict == null) {
+            System.out.println("Could not train zstd dictionary for " + dir);
+            return null;
+        }
+        Files.write(new File(dir, FILE_NAME).toPath(), dict);
+        return dict;
+    }
+
+    static OutputStream compress(final OutputStream out, final int level, final byte[] dict) throws IOException {
+        return codec().compress(out, level, dict);
+    }
+
+    public static InputStream decompress(final InputStream in, final byte[] dict) throws IOException {
+        return codec().decompress(in, dict);
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ZstdDictionaryTest extends TestCase {
+
+    // Something like the sections of a split file
+    private static List<byte[]> sections(final long seed, final int count) {
+        final String[] parts = { "===Noun===\n", "{{de-noun|g=m|gen=", "}}\n", "# [[", "]]\n", "====Translations====\n",
+                                 "{{trans-top|", "* French: {{t+|fr|", "}}\n", "{{trans-bottom}}\n", "===Etymology===\n" };
+        final Random random = new Random(seed);
+        final List<byte[]> sections = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            final StringBuilder section = new StringBuilder("==German==\n");
+            for (int j = random.nextInt(40); j >= 0; --j) {
+                section.append(parts[random.nextInt(parts.length)]).append("word").append(random.nextInt(5000));
+            }
+            sections.add(section.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return sections;
+    }
+
+    private static byte[] roundTrip(final byte[] data, final byte[] dict) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = ZstdDictionary.compress(compressed, 3, dict)) {
+            out.write(data);
+        }
+        try (InputStream in = ZstdDictionary.decompress(new ByteArrayInputStream(compressed.toByteArray()), dict)) {
+            return in.readAllBytes();
+        }
+    }
+
+    public void testTrainCompressDecompress() throws IOException {
+        if (!ZstdDictionary.isAvailable()) {
+            System.out.println("zstd-jni not available, skipping ZstdDictionaryTest");
+            return;
+        }
+        final File dir = Files.createTempDirectory("ZstdDictionaryTest").toFile();
+        try {
+            final byte[] dict = ZstdDictionary.train(dir, sections(1, 20000));
+            assertNotNull(dict);
+            assertTrue(dict.length <= ZstdDictionary.DICT_SIZE);
+            assertTrue(Arrays.equals(dict, ZstdDictionary.load(dir)));
+
+            for (final byte[] section : sections(2, 100)) {
+                assertTrue(Arrays.equals(section, roundTrip(section, dict)));
+                assertTrue(Arrays.equals(section, roundTrip(section, null)));
+            }
+        } finally {
+            new File(dir, ZstdDictionary.FILE_NAME).delete();
+            dir.delete();
+        }
+    }
+
+    public void testTooFewSamples() throws IOException {
+        if (!ZstdDictionary.isAvailable()) return;
+        final File dir = Files.createTempDirectory("ZstdDictionaryTest").toFile();
+        try {
+            assertNull(ZstdDictionary.train(dir, sections(3, 3)));
+            assertNull(ZstdDictionary.load(dir));
+        } finally {
+            dir.delete();
+        }
+    }
+
+}
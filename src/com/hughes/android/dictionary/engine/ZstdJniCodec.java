@@ -0,0 +1,61 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * The only class using zstd-jni, loaded by ZstdDictionary by name so that
+ * the build works without zstd-jni.
+ */
+final class ZstdJniCodec implements ZstdDictionary.Codec {
+
+    @Override
+    public byte[] train(final List<byte[]> samples, final int samplesSize, final int dictSize) {
+        final ZstdDictTrainer trainer = new ZstdDictTrainer(samplesSize, dictSize);
+        for (final byte[] sample : samples) {
+            if (!trainer.addSample(sample)) break;
+        }
+        try {
+            return trainer.trainSamples();
+        } catch (ZstdException e) {
+            System.out.println("zstd dictionary training failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream out, final int level, final byte[] dict) throws IOException {
+        final ZstdOutputStream zstd = new ZstdOutputStream(out, level);
+        zstd.setChecksum(true);
+        if (dict != null) zstd.setDict(dict);
+        return zstd;
+    }
+
+    @Override
+    public InputStream decompress(final InputStream in, final byte[] dict) throws IOException {
+        final ZstdInputStream zstd = new ZstdInputStream(in);
+        if (dict != null) zstd.setDict(dict);
+        return zstd;
+    }
+}
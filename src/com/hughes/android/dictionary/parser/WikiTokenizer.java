@@ -15,8 +15,6 @@
 package com.hughes.android.dictionary.parser;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public final class WikiTokenizer {
 
@@ -31,8 +29,82 @@ public final class WikiTokenizer {
         void onListItem(WikiTokenizer wikiTokenizer);
         void onComment(WikiTokenizer wikiTokenizer);
         void onHtml(WikiTokenizer wikiTokenizer);
+
+        /**
+         * Called by dispatch() instead of onPlainText, with a view into the
+         * wiki text instead of a copy. Callbacks that do not keep the text
+         * can avoid the copy by overriding this.
+         */
+        default void onPlainTextView(CharSequence text) {
+            onPlainText(text.toString());
+        }
+
+        /**
+         * Called by dispatch() for functions instead of onFunction. The
+         * arguments are only parsed when functionPositionArgs() or
+         * functionNamedArgs() is called, so callbacks that often only need
+         * functionName() can save that by overriding this.
+         */
+        default void onFunctionToken(WikiTokenizer tokenizer) {
+            onFunction(tokenizer, tokenizer.functionName(), tokenizer.functionPositionArgs(), tokenizer.functionNamedArgs());
+        }
     }
 
+    /**
+     * A part of a String, without copying it. Strings should only be
+     * created from it (with toString()) where they are kept, e.g. in an
+     * entry or the index.
+     */
+    public static final class Slice implements CharSequence {
+        final String text;
+        final int start;
+        final int end;
+
+        public Slice(final String text, final int start, final int end) {
+            assert 0 <= start && start <= end && end <= text.length();
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public Slice subSequence(final int from, final int to) {
+            if (from < 0 || from > to || to > length()) throw new IndexOutOfBoundsException();
+            return new Slice(text, start + from, start + to);
+        }
+
+        public int indexOf(final char c) {
+            for (int i = start; i < end; ++i) {
+                if (text.charAt(i) == c) return i - start;
+            }
+            return -1;
+        }
+
+        public StringBuilder appendTo(final StringBuilder builder) {
+            return builder.append(text, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.substring(start, end);
+        }
+    }
+
+    /**
+     * Ignores everything. It keeps the default onPlainTextView() and
+     * onFunctionToken(), so subclasses that only override onPlainText() or
+     * onFunction() still get all plain text and functions from dispatch().
+     */
     public static class DoNothingCallback implements Callback {
 
         @Override
@@ -73,23 +145,26 @@ public final class WikiTokenizer {
         }
     }
 
-    //private static final Pattern wikiTokenEvent = Pattern.compile("($)", Pattern.MULTILINE);
-    private static final Pattern wikiTokenEvent = Pattern.compile(
-            "\\{\\{|\\}\\}|" +
-            "\\[\\[|\\]\\]|" +
-            "\\||" +  // Need the | because we might have to find unescaped pipes
-            "=|" +  // Need the = because we might have to find unescaped =
-            "<!--|" +
-            "''|" +
-            "<pre>|" +
-            "<math>|" +
-            "<ref>|" +
-            "\n", Pattern.MULTILINE);
+    // Token events ({{, }}, [[, ]], |, =, <!--, '', <pre>, <math>, <ref>
+    // and \n) by their first char, checked with tokenEventAt().
+    // We need the | and = because we might have to find unescaped pipes
+    // and =.
+    private static final byte NO_EVENT = 0;
+    private static final byte SINGLE = 1;  // \n, | and =
+    private static final byte DOUBLE = 2;  // {{, }}, [[, ]] and ''
+    private static final byte TAG = 3;  // <!--, <pre>, <math> and <ref>
+    private static final byte[] EVENT_CLASS = new byte[128];
+    static {
+        EVENT_CLASS['\n'] = EVENT_CLASS['|'] = EVENT_CLASS['='] = SINGLE;
+        EVENT_CLASS['{'] = EVENT_CLASS['}'] = EVENT_CLASS['['] = EVENT_CLASS[']'] = EVENT_CLASS['\''] = DOUBLE;
+        EVENT_CLASS['<'] = TAG;
+    }
     private static final String listChars = "*#:;";
 
 
-    final String wikiText;
-    final Matcher matcher;
+    String wikiText;
+    // End of the part of wikiText to tokenize, see reset().
+    int textEnd = 0;
 
     boolean justReturnedNewline = true;
     int lastLineStart = 0;
@@ -100,7 +175,8 @@ public final class WikiTokenizer {
     final List<TokenDelim> tokenStack = new ArrayList<>();
 
 
-    private String headingWikiText;
+    private int headingTitleStart;
+    private int headingTitleEnd;
     private int headingDepth;
     private int listPrefixEnd;
     private boolean isPlainText;
@@ -113,28 +189,117 @@ public final class WikiTokenizer {
 
     private int lastUnescapedPipePos;
     private int lastUnescapedEqualsPos;
+    // For each function argument its pipe, = (or -1) and end position,
+    // only parsed into positionArgs and namedArgs when needed.
+    private int[] argPositions = new int[3 * 8];
+    private int argPositionsLength;
+    private boolean argsParsed;
     private final List<String> positionArgs = new ArrayList<>();
     private final Map<String,String> namedArgs = new LinkedHashMap<>();
 
 
+    // Free tokenizers of each thread, see obtain().
+    private static final ThreadLocal<ArrayDeque<WikiTokenizer>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final int MAX_POOLED = 32;
+
     public WikiTokenizer(final String wikiText) {
         this(wikiText, true);
     }
 
     public WikiTokenizer(String wikiText, final boolean isNewline) {
-        wikiText = wikiText.replace('\u2028', '\n');
-        wikiText = wikiText.replace('\u2029', '\n');
-        wikiText = wikiText.replace('\u0085', '\n');
-        this.wikiText = wikiText;
-        this.matcher = wikiTokenEvent.matcher(wikiText);
+        reset(wikiText, 0, wikiText.length(), isNewline);
+    }
+
+    private WikiTokenizer() {
+    }
+
+    /**
+     * A tokenizer for the given part of text from the pool of this thread,
+     * to be given back with release(). The nested dispatch() calls of the
+     * callbacks thus reuse the same few tokenizers.
+     */
+    public static WikiTokenizer obtain(final CharSequence text, final int start, final int end, final boolean isNewline) {
+        final WikiTokenizer tokenizer = pool.get().pollFirst();
+        return (tokenizer != null ? tokenizer : new WikiTokenizer()).reset(text, start, end, isNewline);
+    }
+
+    /** Gives a tokenizer from obtain() back to the pool, it must not be used afterwards. */
+    public void release() {
+        wikiText = "";
+        textEnd = 0;
+        final ArrayDeque<WikiTokenizer> free = pool.get();
+        if (free.size() < MAX_POOLED) free.addFirst(this);
+    }
+
+    public WikiTokenizer reset(final CharSequence text, final int start, final int end) {
+        return reset(text, start, end, true);
+    }
+
+    /**
+     * Starts tokenizing the given part of text from the beginning.
+     * Strings (and Slices of them) are not copied, the positions and views
+     * of the tokens then are within the whole text.
+     */
+    public WikiTokenizer reset(final CharSequence text, int start, int end, final boolean isNewline) {
+        String string;
+        if (text instanceof String) {
+            string = (String) text;
+        } else if (text instanceof Slice) {
+            final Slice slice = (Slice) text;
+            string = slice.text;
+            start += slice.start;
+            end += slice.start;
+        } else {
+            string = text.subSequence(start, end).toString();
+            end -= start;
+            start = 0;
+        }
+        if (needsNormalizing(string, start, end)) {
+            string = normalizeNewlines(string.substring(start, end));
+            end -= start;
+            start = 0;
+        }
+        wikiText = string;
+        textEnd = end;
         justReturnedNewline = isNewline;
+        lastLineStart = start;
+        this.end = start;
+        this.start = -1;
+        clear();
+        return this;
+    }
+
+    private static boolean needsNormalizing(final String text, final int start, final int end) {
+        for (int i = start; i < end; ++i) {
+            final char c = text.charAt(i);
+            if (c == '\u2028' || c == '\u2029' || c == '\u0085') return true;
+        }
+        return false;
+    }
+
+    // All other newlines become \n, without copying if there are none.
+    private static String normalizeNewlines(final String text) {
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (c == '\u2028' || c == '\u2029' || c == '\u0085') {
+                final char[] chars = text.toCharArray();
+                for (int j = i; j < chars.length; ++j) {
+                    if (chars[j] == '\u2028' || chars[j] == '\u2029' || chars[j] == '\u0085') {
+                        chars[j] = '\n';
+                    }
+                }
+                return new String(chars);
+            }
+        }
+        return text;
     }
 
     private void clear() {
         errors.clear();
         tokenStack.clear();
 
-        headingWikiText = null;
+        headingTitleStart = -1;
+        headingTitleEnd = -1;
         headingDepth = -1;
         listPrefixEnd = -1;
         isPlainText = false;
@@ -147,22 +312,68 @@ public final class WikiTokenizer {
         firstUnescapedPipePos = -1;
         lastUnescapedPipePos = -1;
         lastUnescapedEqualsPos = -1;
+        argPositionsLength = 0;
+        argsParsed = false;
         positionArgs.clear();
         namedArgs.clear();
     }
 
-    private static final Matcher POSSIBLE_WIKI_TEXT = Pattern.compile(
-                "\\{\\{|" +
-                "\\[\\[|" +
-                "<!--|" +
-                "''|" +
-                "<pre>|" +
-                "<math>|" +
-                "<ref>|" +
-                "\n"
-            ).matcher("");
+    /**
+     * The end tag if one of the tags <!--, <pre>, <math> and <ref> starts
+     * at pos (where text has a '<'), otherwise null.
+     */
+    private static String tagEndAt(final CharSequence text, final int pos, final int end) {
+        if (pos + 3 >= end) return null;
+        switch (text.charAt(pos + 1)) {
+            case '!':
+                return text.charAt(pos + 2) == '-' && text.charAt(pos + 3) == '-' ? "-->" : null;
+            case 'p':
+                return regionStartsWith(text, pos, end, "<pre>") ? "</pre>" : null;
+            case 'm':
+                return regionStartsWith(text, pos, end, "<math>") ? "</math>" : null;
+            case 'r':
+                return regionStartsWith(text, pos, end, "<ref>") ? "</ref>" : null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean regionStartsWith(final CharSequence text, final int pos, final int end, final String prefix) {
+        if (pos + prefix.length() > end) return false;
+        for (int i = 0; i < prefix.length(); ++i) {
+            if (text.charAt(pos + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /** Whether a token event starts at pos, for the plain text scan in nextToken(). */
+    private boolean tokenEventAt(final int pos) {
+        final char c = wikiText.charAt(pos);
+        if (c >= EVENT_CLASS.length) return false;
+        return switch (EVENT_CLASS[c]) {
+            case SINGLE -> true;
+            case DOUBLE -> pos + 1 < textEnd && wikiText.charAt(pos + 1) == c;
+            case TAG -> tagEndAt(wikiText, pos, textEnd) != null;
+            default -> false;
+        };
+    }
+
+    /**
+     * Whether text may be more than plain text, i.e. has one of {{, [[,
+     * <!--, '', <pre>, <math>, <ref> or \n.
+     */
+    private static boolean possibleWikiText(final CharSequence text) {
+        final int len = text.length();
+        for (int i = 0; i < len; i++) {
+            final char c = text.charAt(i);
+            if (c == '\n') return true;
+            if ((c == '\'' || c == '[' || c == '{') && i + 1 < len && text.charAt(i + 1) == c) return true;
+            if (c == '<' && tagEndAt(text, i, len) != null) return true;
+        }
+        return false;
+    }
 
-    public static void dispatch(final String wikiText, final boolean isNewline, final Callback callback) {
+    public static void dispatch(final CharSequence wikiText, final boolean isNewline, final Callback callback) {
         // Statistical background, from EN-DE dictionary generation:
         // out of 12083000 calls, 9697686 can be skipped via the test
         // for ', \n and ((c - 0x3b) & 0xff9f) < 2 (which covers among others
@@ -177,42 +388,40 @@ public final class WikiTokenizer {
         // Original runtime: 1m29.708s
         // Optimized: 1m19.170s
         // Regex removed: 1m20.314s (not statistically significant)
-        boolean matched = false;
-        for (int i = 0; i < wikiText.length(); i++) {
-            int c = wikiText.charAt(i);
-            if (c == '\'' || c == '\n' || c == '<' || c == '[' || c == '{') {
-                matched = true;
-                break;
-            }
-        }
-        if (!matched || !POSSIBLE_WIKI_TEXT.reset(wikiText).find()) {
-            callback.onPlainText(wikiText);
+        // The regex is now replaced by possibleWikiText(), which checks the
+        // same in a single pass without it.
+        if (!possibleWikiText(wikiText)) {
+            callback.onPlainTextView(wikiText);
         } else {
-            final WikiTokenizer tokenizer = new WikiTokenizer(wikiText, isNewline);
-            while (tokenizer.nextToken() != null) {
-                if (tokenizer.isPlainText()) {
-                    callback.onPlainText(tokenizer.token());
-                } else if (tokenizer.isMarkup()) {
-                    callback.onMarkup(tokenizer);
-                } else if (tokenizer.isWikiLink()) {
-                    callback.onWikiLink(tokenizer);
-                } else if (tokenizer.isNewline()) {
-                    callback.onNewline(tokenizer);
-                } else if (tokenizer.isFunction()) {
-                    callback.onFunction(tokenizer, tokenizer.functionName(), tokenizer.functionPositionArgs(), tokenizer.functionNamedArgs());
-                } else if (tokenizer.isHeading()) {
-                    callback.onHeading(tokenizer);
-                } else if (tokenizer.isListItem()) {
-                    callback.onListItem(tokenizer);
-                } else if (tokenizer.isComment()) {
-                    callback.onComment(tokenizer);
-                } else if (tokenizer.isHtml()) {
-                    callback.onHtml(tokenizer);
-                } else if (!tokenizer.errors.isEmpty()) {
-                    // Log was already printed....
-                } else {
-                    throw new IllegalStateException("Unknown wiki state: " + tokenizer.token());
+            final WikiTokenizer tokenizer = obtain(wikiText, 0, wikiText.length(), isNewline);
+            try {
+                while (tokenizer.nextToken() != null) {
+                    if (tokenizer.isPlainText()) {
+                        callback.onPlainTextView(tokenizer.tokenView());
+                    } else if (tokenizer.isMarkup()) {
+                        callback.onMarkup(tokenizer);
+                    } else if (tokenizer.isWikiLink()) {
+                        callback.onWikiLink(tokenizer);
+                    } else if (tokenizer.isNewline()) {
+                        callback.onNewline(tokenizer);
+                    } else if (tokenizer.isFunction()) {
+                        callback.onFunctionToken(tokenizer);
+                    } else if (tokenizer.isHeading()) {
+                        callback.onHeading(tokenizer);
+                    } else if (tokenizer.isListItem()) {
+                        callback.onListItem(tokenizer);
+                    } else if (tokenizer.isComment()) {
+                        callback.onComment(tokenizer);
+                    } else if (tokenizer.isHtml()) {
+                        callback.onHtml(tokenizer);
+                    } else if (!tokenizer.errors.isEmpty()) {
+                        // Log was already printed....
+                    } else {
+                        throw new IllegalStateException("Unknown wiki state: " + tokenizer.token());
+                    }
                 }
+            } finally {
+                tokenizer.release();
             }
         }
     }
@@ -231,12 +440,17 @@ public final class WikiTokenizer {
     }
 
     public boolean isHeading() {
-        return headingWikiText != null;
+        return headingTitleEnd != -1;
     }
 
     public String headingWikiText() {
         assert isHeading();
-        return headingWikiText;
+        return wikiText.substring(headingTitleStart, headingTitleEnd);
+    }
+
+    public Slice headingWikiTextView() {
+        assert isHeading();
+        return new Slice(wikiText, headingTitleStart, headingTitleEnd);
     }
 
     public int headingDepth() {
@@ -273,6 +487,11 @@ public final class WikiTokenizer {
         return wikiText.substring(listPrefixEnd, end);
     }
 
+    public Slice listItemWikiTextView() {
+        assert isListItem();
+        return new Slice(wikiText, listPrefixEnd, end);
+    }
+
     public boolean isFunction() {
         return isFunction;
     }
@@ -287,14 +506,36 @@ public final class WikiTokenizer {
         return trimNewlines(wikiText.substring(start + 2, safeEnd).trim());
     }
 
+    /** Parsed on the first call, so this must be called before nextToken(). */
     public List<String> functionPositionArgs() {
+        parseFunctionArgs();
         return positionArgs;
     }
 
+    /** Parsed on the first call, so this must be called before nextToken(). */
     public Map<String, String> functionNamedArgs() {
+        parseFunctionArgs();
         return namedArgs;
     }
 
+    private void parseFunctionArgs() {
+        if (argsParsed) return;
+        argsParsed = true;
+        for (int i = 0; i < argPositionsLength; i += 3) {
+            final int pipe = argPositions[i];
+            final int equals = argPositions[i + 1];
+            final int argEnd = argPositions[i + 2];
+            if (equals != -1) {
+                final String key = wikiText.substring(pipe + 1, equals);
+                final String value = wikiText.substring(equals + 1, argEnd);
+                namedArgs.put(trimNewlines(key), trimNewlines(value));
+            } else {
+                final String value = wikiText.substring(pipe + 1, argEnd);
+                positionArgs.add(trimNewlines(value));
+            }
+        }
+    }
+
     public boolean isPlainText() {
         return isPlainText;
     }
@@ -309,10 +550,18 @@ public final class WikiTokenizer {
         if (lastUnescapedPipePos != -1) {
             return trimNewlines(wikiText.substring(lastUnescapedPipePos + 1, end - 2));
         }
-        assert start + 2 < wikiText.length() && end >= 2: wikiText;
+        assert start + 2 < textEnd && end >= 2: wikiText;
         return trimNewlines(wikiText.substring(start + 2, end - 2));
     }
 
+    /** Same as wikiLinkText(), only copied if there are newlines to trim. */
+    public CharSequence wikiLinkTextView() {
+        assert isWikiLink();
+        final int linkStart = lastUnescapedPipePos != -1 ? lastUnescapedPipePos + 1 : start + 2;
+        final Slice text = new Slice(wikiText, linkStart, end - 2);
+        return text.indexOf('\n') == -1 ? text : trimNewlines(text.toString());
+    }
+
     public String wikiLinkDest() {
         assert isWikiLink();
         // "[[.."
@@ -327,7 +576,7 @@ public final class WikiTokenizer {
     }
 
     public boolean remainderStartsWith(final String prefix) {
-        return wikiText.startsWith(prefix, start);
+        return startsWith(prefix, start);
     }
 
     public void nextLine() {
@@ -340,6 +589,36 @@ public final class WikiTokenizer {
     }
 
 
+    /**
+     * Moves to the next heading with a depth of at most maxDepth, like
+     * calling nextToken() until there is one, returns null at the end.
+     * Lines without {{, [[ or tags (which might continue on the following
+     * lines) are skipped as a whole, without tokenizing them.
+     */
+    public WikiTokenizer skipToNextHeading(final int maxDepth) {
+        while (true) {
+            if (justReturnedNewline && end < textEnd && wikiText.charAt(end) != '=') {
+                int i = end;
+                char c = 0;
+                while (i < textEnd && (c = wikiText.charAt(i)) != '\n' && c != '{' && c != '[' && c != '<') {
+                    ++i;
+                }
+                if (i == textEnd) {
+                    end = i;
+                } else if (c == '\n') {
+                    end = i + 1;
+                    continue;
+                }
+            }
+            if (nextToken() == null) {
+                return null;
+            }
+            if (isHeading() && headingDepth() <= maxDepth) {
+                return this;
+            }
+        }
+    }
+
     public WikiTokenizer nextToken() {
         this.clear();
 
@@ -351,7 +630,7 @@ public final class WikiTokenizer {
 
         try {
 
-            final int len = wikiText.length();
+            final int len = textEnd;
             if (start >= len) {
                 return null;
             }
@@ -376,7 +655,7 @@ public final class WikiTokenizer {
                     headingDepth = headerTitleStart - headerStart;
                     // Skip non-=...
                     if (end < len) {
-                        final int nextNewline = safeIndexOf(wikiText, end, "\n", "\n");
+                        final int nextNewline = safeIndexOf(end, "\n", "\n");
                         final int closingEquals = escapedFindEnd(end, TokenDelim.EQUALS);
                         if (wikiText.charAt(closingEquals - 1) == '=') {
                             end = closingEquals - 1;
@@ -385,7 +664,8 @@ public final class WikiTokenizer {
                         }
                     }
                     final int headerTitleEnd = end;
-                    headingWikiText = wikiText.substring(headerTitleStart, headerTitleEnd);
+                    headingTitleStart = headerTitleStart;
+                    headingTitleEnd = headerTitleEnd;
                     // Skip ===...
                     while (end < len && ++end < len && wikiText.charAt(end) == '=') {}
                     final int headerEnd = end;
@@ -402,86 +682,63 @@ public final class WikiTokenizer {
                 }
             }
 
-            if (wikiText.startsWith("'''", start)) {
-                isMarkup = true;
-                end = start + 3;
-                return this;
-            }
-
-            if (wikiText.startsWith("''", start)) {
-                isMarkup = true;
-                end = start + 2;
-                return this;
-            }
-
-            if (wikiText.startsWith("[[", start)) {
-                end = escapedFindEnd(start + 2, TokenDelim.DBRACKET_CLOSE);
-                isWikiLink = errors.isEmpty();
-                return this;
-            }
-
-            if (wikiText.startsWith("{{", start)) {
-                end = escapedFindEnd(start + 2, TokenDelim.BRACE_CLOSE);
-                isFunction = errors.isEmpty();
-                return this;
-            }
-
-            if (wikiText.startsWith("<pre>", start)) {
-                end = safeIndexOf(wikiText, start, "</pre>", "\n");
-                isHtml = true;
-                return this;
-            }
-
-            if (wikiText.startsWith("<ref>", start)) {
-                end = safeIndexOf(wikiText, start, "</ref>", "\n");
-                isHtml = true;
-                return this;
-            }
-
-            if (wikiText.startsWith("<math>", start)) {
-                end = safeIndexOf(wikiText, start, "</math>", "\n");
-                isHtml = true;
-                return this;
-            }
-
-            if (wikiText.startsWith("<!--", start)) {
-                isComment = true;
-                end = safeIndexOf(wikiText, start, "-->", "\n");
-                return this;
-            }
-
-            if (wikiText.startsWith("}}", start) || wikiText.startsWith("]]", start)) {
-                errors.add("Close without open!");
-                end += 2;
-                return this;
-            }
-
-            if (wikiText.charAt(start) == '|' || wikiText.charAt(start) == '=') {
-                isPlainText = true;
-                ++end;
-                return this;
+            final char firstChar = wikiText.charAt(start);
+            switch (firstChar) {
+                case '\'':
+                    if (startsWith("''", start)) {
+                        isMarkup = true;
+                        end = startsWith("'''", start) ? start + 3 : start + 2;
+                        return this;
+                    }
+                    break;
+                case '[':
+                    if (startsWith("[[", start)) {
+                        end = escapedFindEnd(start + 2, TokenDelim.DBRACKET_CLOSE);
+                        isWikiLink = errors.isEmpty();
+                        return this;
+                    }
+                    break;
+                case '{':
+                    if (startsWith("{{", start)) {
+                        end = escapedFindEnd(start + 2, TokenDelim.BRACE_CLOSE);
+                        isFunction = errors.isEmpty();
+                        return this;
+                    }
+                    break;
+                case '<':
+                    final String tagEnd = tagEndAt(wikiText, start, textEnd);
+                    if (tagEnd != null) {
+                        end = safeIndexOf(start, tagEnd, "\n");
+                        isComment = tagEnd.equals("-->");
+                        isHtml = !isComment;
+                        return this;
+                    }
+                    break;
+                case '}':
+                case ']':
+                    if (start + 1 < textEnd && wikiText.charAt(start + 1) == firstChar) {
+                        errors.add("Close without open!");
+                        end += 2;
+                        return this;
+                    }
+                    break;
+                case '|':
+                case '=':
+                    isPlainText = true;
+                    ++end;
+                    return this;
             }
 
-
-            while (end < wikiText.length()) {
-                int c = wikiText.charAt(end);
-                if (c == '\n' || c == '\'' || ((c - 0x1b) & 0xff9f) < 3) {
-                    matcher.region(end, wikiText.length());
-                    if (matcher.lookingAt()) break;
-                }
+            while (end < textEnd && !tokenEventAt(end)) {
                 end++;
             }
-            if (end != wikiText.length()) {
-                isPlainText = true;
-                if (end == start) {
-                    // stumbled over a new type of newline?
-                    // Or matcher is out of sync with checks above
-                    errors.add("Empty group: " + this.matcher.group() + " char: " + (int)wikiText.charAt(end));
-                    assert false;
-                    // Note: all newlines should be normalize to \n before calling this function
-                    throw new RuntimeException("matcher not in sync with code, or new type of newline, errors :" + errors);
-                }
-                return this;
+            if (end == start) {
+                // stumbled over a new type of newline?
+                // Or tokenEventAt() is out of sync with checks above
+                errors.add("Empty token, char: " + (int)wikiText.charAt(end));
+                assert false;
+                // Note: all newlines should be normalize to \n before calling this function
+                throw new RuntimeException("tokenEventAt() not in sync with code, or new type of newline, errors :" + errors);
             }
 
             isPlainText = true;
@@ -501,6 +758,12 @@ public final class WikiTokenizer {
         return token;
     }
 
+    /** The same as token(), as a view into the wiki text instead of a copy. */
+    public Slice tokenView() {
+        assert end - start == 1 || end == start || wikiText.charAt(end - 1) != '\n' : "token='" + token() + "'";
+        return new Slice(wikiText, start, end);
+    }
+
     enum TokenDelim { NEWLINE, BRACE_OPEN, BRACE_CLOSE, DBRACKET_OPEN, DBRACKET_CLOSE, BRACKET_OPEN, BRACKET_CLOSE, PIPE, EQUALS, COMMENT }
 
     private int tokenDelimLen(TokenDelim d) {
@@ -521,23 +784,23 @@ public final class WikiTokenizer {
         int end = start;
         int firstNewline = -1;
         int singleBrackets = 0;
-        while (end < wikiText.length()) {
+        while (end < textEnd) {
             // Manual replacement for matcher.find(end),
             // because Java regexp is a ridiculously slow implementation.
             // Initialize to always match the end.
             TokenDelim match = TokenDelim.NEWLINE;
             int matchStart = end;
-            for (; matchStart < wikiText.length(); matchStart++) {
+            for (; matchStart < textEnd; matchStart++) {
                 int i = matchStart;
                 int c = wikiText.charAt(i);
                 if (c == '\n') break;
-                if (c == '{' && wikiText.startsWith("{{", i)) { match = TokenDelim.BRACE_OPEN; break; }
-                if (c == '}' && wikiText.startsWith("}}", i)) { match = TokenDelim.BRACE_CLOSE; break; }
-                if (c == '[') { match = wikiText.startsWith("[[", i) ? TokenDelim.DBRACKET_OPEN : TokenDelim.BRACKET_OPEN ; break; }
-                if (c == ']') { match = wikiText.startsWith("]]", i) ? TokenDelim.DBRACKET_CLOSE : TokenDelim.BRACKET_CLOSE ; break; }
+                if (c == '{' && startsWith("{{", i)) { match = TokenDelim.BRACE_OPEN; break; }
+                if (c == '}' && startsWith("}}", i)) { match = TokenDelim.BRACE_CLOSE; break; }
+                if (c == '[') { match = startsWith("[[", i) ? TokenDelim.DBRACKET_OPEN : TokenDelim.BRACKET_OPEN ; break; }
+                if (c == ']') { match = startsWith("]]", i) ? TokenDelim.DBRACKET_CLOSE : TokenDelim.BRACKET_CLOSE ; break; }
                 if (c == '|') { match = TokenDelim.PIPE; break; }
                 if (c == '=') { match = TokenDelim.EQUALS; break; }
-                if (c == '<' && wikiText.startsWith("<!--", i)) { match = TokenDelim.COMMENT; break; }
+                if (c == '<' && startsWith("<!--", i)) { match = TokenDelim.COMMENT; break; }
             }
 
             int matchEnd = matchStart + (match == TokenDelim.NEWLINE ? 0 : tokenDelimLen(match));
@@ -550,7 +813,7 @@ public final class WikiTokenizer {
             }
             switch (match) {
                 case NEWLINE:
-                assert matchStart == wikiText.length() || wikiText.charAt(matchStart) == '\n' : wikiText + ", " + matchStart;
+                assert matchStart == textEnd || wikiText.charAt(matchStart) == '\n' : wikiText + ", " + matchStart;
                 if (firstNewline == -1) {
                     firstNewline = matchEnd;
                 }
@@ -579,16 +842,16 @@ public final class WikiTokenizer {
                             tokenStack.add(removed);
                         } else {
                             errors.add("Unmatched {{ error: " + wikiText.substring(start, matchEnd));
-                            return safeIndexOf(wikiText, start, "\n", "\n");
+                            return safeIndexOf(start, "\n", "\n");
                         }
                     } else if (removed == TokenDelim.DBRACKET_OPEN && match != TokenDelim.DBRACKET_CLOSE) {
                         errors.add("Unmatched [[ error: " + wikiText.substring(start, matchEnd));
-                        return safeIndexOf(wikiText, start, "\n", "\n");
+                        return safeIndexOf(start, "\n", "\n");
                     }
                 } else {
                     errors.add("Pop too many " + wikiText.substring(matchStart, matchEnd) + " error: " + wikiText.substring(start, matchEnd).replace("\n", "\\\\n"));
                     // If we were looking for a newline
-                    return safeIndexOf(wikiText, start, "\n", "\n");
+                    return safeIndexOf(start, "\n", "\n");
                 }
                 break;
                 case PIPE:
@@ -604,10 +867,10 @@ public final class WikiTokenizer {
                 // we're looking for, keep on going.
                 break;
                 case COMMENT:
-                end = wikiText.indexOf("-->", matchStart);
+                end = indexOf("-->", matchStart);
                 if (end == -1) {
-                    errors.add("Unmatched <!-- error: " + wikiText.substring(start));
-                    return safeIndexOf(wikiText, start, "\n", "\n");
+                    errors.add("Unmatched <!-- error: " + wikiText.substring(start, textEnd));
+                    return safeIndexOf(start, "\n", "\n");
                 }
                 break;
                 default:
@@ -621,7 +884,7 @@ public final class WikiTokenizer {
             // We were looking for the end, we got it.
             return end;
         }
-        errors.add("Couldn't find: " + toFind + ", "+ wikiText.substring(start));
+        errors.add("Couldn't find: " + toFind + ", "+ wikiText.substring(start, textEnd));
         if (firstNewline != -1) {
             return firstNewline;
         }
@@ -632,14 +895,12 @@ public final class WikiTokenizer {
         if (firstUnescapedPipePos == -1) {
             firstUnescapedPipePos = lastUnescapedPipePos = matchStart;
         } else if (insideFunction) {
-            if (lastUnescapedEqualsPos > lastUnescapedPipePos) {
-                final String key = wikiText.substring(lastUnescapedPipePos + 1, lastUnescapedEqualsPos);
-                final String value = wikiText.substring(lastUnescapedEqualsPos + 1, matchStart);
-                namedArgs.put(trimNewlines(key), trimNewlines(value));
-            } else {
-                final String value = wikiText.substring(lastUnescapedPipePos + 1, matchStart);
-                positionArgs.add(trimNewlines(value));
+            if (argPositionsLength + 3 > argPositions.length) {
+                argPositions = Arrays.copyOf(argPositions, 2 * argPositions.length);
             }
+            argPositions[argPositionsLength++] = lastUnescapedPipePos;
+            argPositions[argPositionsLength++] = lastUnescapedEqualsPos > lastUnescapedPipePos ? lastUnescapedEqualsPos : -1;
+            argPositions[argPositionsLength++] = matchStart;
         }
         lastUnescapedPipePos = matchStart;
     }
@@ -654,6 +915,34 @@ public final class WikiTokenizer {
         return s.replace('\n', ' ');
     }
 
+    // safeIndexOf within the text of this tokenizer.
+    private int safeIndexOf(final int start, final String target, final String backup) {
+        int close = indexOf(target, start);
+        if (close != -1) {
+            // Don't step over a \n.
+            return close + (target.equals("\n") ? 0 : target.length());
+        }
+        close = indexOf(backup, start);
+        if (close != -1) {
+            return close + (backup.equals("\n") ? 0 : backup.length());
+        }
+        return textEnd;
+    }
+
+    private boolean startsWith(final String prefix, final int pos) {
+        return pos + prefix.length() <= textEnd && wikiText.startsWith(prefix, pos);
+    }
+
+    private int indexOf(final String target, final int from) {
+        if (textEnd == wikiText.length()) return wikiText.indexOf(target, from);
+        // Do not search the rest of the text after the part to tokenize.
+        final char first = target.charAt(0);
+        for (int i = from; i + target.length() <= textEnd; ++i) {
+            if (wikiText.charAt(i) == first && wikiText.startsWith(target, i)) return i;
+        }
+        return -1;
+    }
+
     static int safeIndexOf(final String s, final int start, final String target, final String backup) {
         int close = s.indexOf(target, start);
         if (close != -1) {
@@ -668,18 +957,22 @@ public final class WikiTokenizer {
     }
 
     public static String toPlainText(final String wikiText) {
-        final WikiTokenizer wikiTokenizer = new WikiTokenizer(wikiText);
+        final WikiTokenizer wikiTokenizer = obtain(wikiText, 0, wikiText.length(), true);
         final StringBuilder builder = new StringBuilder();
-        while (wikiTokenizer.nextToken() != null) {
-            if (wikiTokenizer.isPlainText()) {
-                builder.append(wikiTokenizer.token());
-            } else if (wikiTokenizer.isWikiLink()) {
-                builder.append(wikiTokenizer.wikiLinkText());
-            } else if (wikiTokenizer.isNewline()) {
-                builder.append("\n");
-            } else if (wikiTokenizer.isFunction()) {
-                builder.append(wikiTokenizer.token());
+        try {
+            while (wikiTokenizer.nextToken() != null) {
+                if (wikiTokenizer.isPlainText()) {
+                    builder.append(wikiTokenizer.token());
+                } else if (wikiTokenizer.isWikiLink()) {
+                    builder.append(wikiTokenizer.wikiLinkText());
+                } else if (wikiTokenizer.isNewline()) {
+                    builder.append("\n");
+                } else if (wikiTokenizer.isFunction()) {
+                    builder.append(wikiTokenizer.token());
+                }
             }
+        } finally {
+            wikiTokenizer.release();
         }
         return builder.toString();
     }
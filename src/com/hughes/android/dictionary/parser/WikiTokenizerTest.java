@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -340,4 +341,53 @@ public class WikiTokenizerTest extends TestCase {
 
     }
 
+    public void testPart() {
+        final String wikiText = "[[x]]\n== a ==\n* [[b|c]] {{d}}\n[[e";
+        final int start = wikiText.indexOf("=");
+        final int end = wikiText.indexOf("\n[[e") + 1;
+        final WikiTokenizer tokenizer = WikiTokenizer.obtain(wikiText, start, end, true);
+        assertEquals(" a ", tokenizer.nextToken().headingWikiTextView().toString());
+        assertEquals("\n", tokenizer.nextToken().tokenView().toString());
+        assertEquals(" [[b|c]] {{d}}", tokenizer.nextToken().listItemWikiTextView().toString());
+        final WikiTokenizer item = WikiTokenizer.obtain(tokenizer.listItemWikiTextView(), 0, 14, false);
+        assertEquals(" ", item.nextToken().token());
+        assertEquals("c", item.nextToken().wikiLinkTextView().toString());
+        assertEquals(" ", item.nextToken().tokenView().toString());
+        assertTrue(item.nextToken().isFunction());
+        assertNull(item.nextToken());
+        item.release();
+        assertEquals("\n", tokenizer.nextToken().token());
+        assertNull(tokenizer.nextToken());
+        tokenizer.release();
+    }
+
+    public void testSkipToNextHeading() {
+        final String wikiText = "a\n==b==\n* c\n{{d\n=e}}\n===f===\n<!--\n==g==\n-->\n==h==\nx";
+        final WikiTokenizer tokenizer = new WikiTokenizer(wikiText);
+        assertEquals("b", tokenizer.skipToNextHeading(2).headingWikiText());
+        assertEquals("f", tokenizer.skipToNextHeading(3).headingWikiText());
+        assertEquals("h", tokenizer.skipToNextHeading(2).headingWikiText());
+        assertEquals("\n", tokenizer.nextToken().token());
+        assertNull(tokenizer.skipToNextHeading(2));
+    }
+
+    public void testDoNothingCallbackSubclass() {
+        final List<String> events = new ArrayList<>();
+        final WikiTokenizer.Callback callback = new WikiTokenizer.DoNothingCallback() {
+            @Override
+            public void onPlainText(final String text) {
+                events.add(text);
+            }
+
+            @Override
+            public void onFunction(final WikiTokenizer tokenizer, final String functionName,
+                                   final List<String> functionPositionArgs, final Map<String, String> functionNamedArgs) {
+                events.add(functionName + functionPositionArgs + functionNamedArgs);
+            }
+        };
+        final String wikiText = "xx a {{f|b|c=d}} e";
+        WikiTokenizer.dispatch(wikiText.substring(3), false, callback);
+        assertEquals(Arrays.asList("a ", "f[b]{c=d}", " e"), events);
+    }
+
 }
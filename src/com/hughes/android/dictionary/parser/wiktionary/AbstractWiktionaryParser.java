@@ -14,14 +14,14 @@
 
 package com.hughes.android.dictionary.parser.wiktionary;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -29,20 +29,24 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.compress.compressors.CompressorException;
-import org.apache.commons.compress.compressors.CompressorStreamFactory;
-
+import com.hughes.android.dictionary.engine.ChunkedSplitFile;
 import com.hughes.android.dictionary.engine.EntrySource;
 import com.hughes.android.dictionary.engine.EntryTypeName;
 import com.hughes.android.dictionary.engine.IndexBuilder;
 import com.hughes.android.dictionary.engine.IndexedEntry;
-import com.hughes.android.dictionary.engine.ReadAheadBuffer;
+import com.hughes.android.dictionary.engine.MappedSplitReader;
+import com.hughes.android.dictionary.engine.SplitCache;
 import com.hughes.android.dictionary.parser.Parser;
 import com.hughes.android.dictionary.parser.WikiTokenizer;
 import com.hughes.util.EnumUtil;
@@ -51,99 +55,400 @@ public abstract class AbstractWiktionaryParser implements Parser {
 
     static final Logger LOG = Logger.getLogger("WiktionaryParser");
 
-    private static final Pattern SUPERSCRIPT = Pattern.compile("<sup>[0-9]*</sup>");
-
     final SortedMap<String, AtomicInteger> counters = new TreeMap<>();
     final Set<String> pairsAdded = new LinkedHashSet<>();
 
     public EntrySource entrySource;
     public String title;
+    // Directory for decoded copies of compressed inputs (see SplitCache), or null.
+    public File splitCache = null;
+
+    // The parser that owns the state shared by all sections (like
+    // pairsAdded), for the workers of parseParallel the one that started them.
+    // Must only be used in IndexBuilder.inRecordOrder.
+    AbstractWiktionaryParser merger = this;
+    private SectionWorkers workers = null;
 
 
     abstract void parseSection(final String heading, final String text);
 
     abstract void removeUselessArgs(final Map<String, String> namedArgs);
 
-    private static String replaceSuperscript(String in) {
-        Matcher matcher;
-        while ((matcher = SUPERSCRIPT.matcher(in)).find()) {
-            String replace = "";
-            String orig = matcher.group();
-            for (int i = 5; i < orig.length() - 6; i++)
-            {
-                char c = switch (orig.charAt(i)) {
-                    case '0' -> '\u2070';
-                    case '1' -> '\u00b9';
-                    case '2' -> '\u00b2';
-                    case '3' -> '\u00b3';
-                    case '4' -> '\u2074';
-                    case '5' -> '\u2075';
-                    case '6' -> '\u2076';
-                    case '7' -> '\u2077';
-                    case '8' -> '\u2078';
-                    case '9' -> '\u2079';
-                    default -> throw new RuntimeException();
-                };
-                replace += c;
+    /**
+     * A parser with the same configuration for the worker threads of
+     * parseParallel, sharing the state that is only changed in
+     * IndexBuilder.inRecordOrder.
+     */
+    abstract AbstractWiktionaryParser newWorker();
+
+    private static final String SUP_START = "<sup>";
+    private static final String SUP_END = "</sup>";
+    private static final char[] SUPERSCRIPT_DIGITS = {
+        '\u2070', '\u00b9', '\u00b2', '\u00b3', '\u2074', '\u2075', '\u2076', '\u2077', '\u2078', '\u2079'};
+
+    // Reused for replaceSuperscript, each thread of parseParallel has its own parser.
+    private final StringBuilder superscriptBuilder = new StringBuilder();
+
+    /**
+     * Replaces &lt;sup&gt;[0-9]*&lt;/sup&gt; by the Unicode superscript
+     * digits in a single pass, returns {@code in} itself if there is
+     * nothing to replace.
+     */
+    String replaceSuperscript(final String in) {
+        int start = in.indexOf(SUP_START);
+        if (start < 0) return in;
+        final StringBuilder out = superscriptBuilder;
+        out.setLength(0);
+        int pos = 0;
+        boolean replaced = false;
+        while (start >= 0) {
+            final int digitsStart = start + SUP_START.length();
+            final int digitsEnd = skipDigits(in, digitsStart);
+            if (in.startsWith(SUP_END, digitsEnd)) {
+                out.append(in, pos, start);
+                appendSuperscript(out, in, digitsStart, digitsEnd);
+                pos = digitsEnd + SUP_END.length();
+                if (digitsStart == digitsEnd) pos = rejoinSuperscript(out, in, pos);
+                replaced = true;
             }
-            in = matcher.replaceFirst(replace);
+            // <sup> cannot overlap with itself, and rejoining might have used more of in
+            start = in.indexOf(SUP_START, Math.max(digitsStart, pos));
+        }
+        if (!replaced) return in;
+        out.append(in, pos, in.length());
+        final String result = out.toString();
+        // Do not keep the memory of exceptionally large sections.
+        if (out.capacity() > 1024 * 1024) {
+            out.setLength(0);
+            out.trimToSize();
+        }
+        return result;
+    }
+
+    private static int skipDigits(final CharSequence s, int i) {
+        while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') ++i;
+        return i;
+    }
+
+    private static void appendSuperscript(final StringBuilder out, final CharSequence digits, final int start, final int end) {
+        for (int i = start; i < end; ++i) {
+            out.append(SUPERSCRIPT_DIGITS[digits.charAt(i) - '0']);
         }
-        return in;
+    }
+
+    /**
+     * After removing an empty &lt;sup&gt;&lt;/sup&gt;, the text before it
+     * (at the end of out) and after it (in from pos on) might form a new
+     * tag to replace, e.g. for "&lt;sup&gt;1&lt;sup&gt;&lt;/sup&gt;2&lt;/sup&gt;"
+     * or "&lt;sup&gt;&lt;/&lt;sup&gt;&lt;/sup&gt;sup&gt;".
+     * Replaces it like a rescan from the start would, returns the new pos.
+     */
+    private static int rejoinSuperscript(final StringBuilder out, final String in, int pos) {
+        while (true) {
+            // The new tag starts at one of the last two '<' of out, the first one wins.
+            final int last = out.lastIndexOf("<");
+            if (last < 0) return pos;
+            int tagStart = last > 0 ? out.lastIndexOf("<", last - 1) : -1;
+            int newPos = tagStart < 0 ? -1 : joinSuperscript(out, tagStart, in, pos);
+            if (newPos < 0) {
+                tagStart = last;
+                newPos = joinSuperscript(out, tagStart, in, pos);
+            }
+            if (newPos < 0) return pos;
+            pos = newPos;
+            // Only an empty tag can join further text.
+            if (out.length() != tagStart) return pos;
+        }
+    }
+
+    /**
+     * Replaces the tag starting in out at tagStart and ending in in after
+     * pos, returns the position after it or -1 if there is none.
+     */
+    private static int joinSuperscript(final StringBuilder out, final int tagStart, final String in, final int pos) {
+        final int tailLength = out.length() - tagStart;
+        if (tailLength < SUP_START.length()) {
+            if (!SUP_START.startsWith(out.substring(tagStart))) return -1;
+        } else {
+            if (!SUP_START.contentEquals(out.subSequence(tagStart, tagStart + SUP_START.length()))) return -1;
+            final int digitsEnd = skipDigits(out, tagStart + SUP_START.length());
+            if (out.length() - digitsEnd >= SUP_END.length() || !SUP_END.startsWith(out.substring(digitsEnd))) return -1;
+        }
+        // At most the rest of the tag from in
+        final int digitsStart = Math.min(in.length(), pos + Math.max(0, SUP_START.length() - tailLength));
+        final int end = Math.min(in.length(), skipDigits(in, digitsStart) + SUP_END.length());
+        final String joined = out.substring(tagStart) + in.substring(pos, end);
+        if (!joined.startsWith(SUP_START)) return -1;
+        final int digitsEnd = skipDigits(joined, SUP_START.length());
+        if (!joined.startsWith(SUP_END, digitsEnd)) return -1;
+        out.setLength(tagStart);
+        appendSuperscript(out, joined, SUP_START.length(), digitsEnd);
+        return pos + digitsEnd + SUP_END.length() - tailLength;
     }
 
     @Override
     public void parse(final File file, final EntrySource entrySource, final int pageLimit) throws IOException {
+        parse(file, entrySource, pageLimit, 1.0);
+    }
+
+    // Whether item i is part of an evenly spread sample of the given fraction.
+    static boolean inSample(final long i, final double sample) {
+        return sample >= 1.0 || (long) ((i + 1) * sample) != (long) (i * sample);
+    }
+
+    /**
+     * Like parse(), but the sections are parsed by the given number of
+     * threads, each with its own parser from newWorker(). Their changes to
+     * the indices are applied by this thread in the order of the sections
+     * (see IndexBuilder.deferChanges), so the result is the same as from
+     * parse().
+     */
+    public void parseParallel(final File file, final EntrySource entrySource, final int pageLimit, final double sample, final int threads) throws IOException {
+        if (threads > 1) workers = new SectionWorkers(threads);
+        try {
+            parse(file, entrySource, pageLimit, sample);
+        } finally {
+            workers = null;
+        }
+    }
+
+    /**
+     * Like parse(), but only parses about the given fraction of the sections,
+     * spread over the whole file. For chunked split files whole chunks are
+     * skipped without reading them.
+     */
+    public void parse(final File file, final EntrySource entrySource, final int pageLimit, final double sample) throws IOException {
         this.entrySource = entrySource;
-        int pageCount = 0;
-        File input = new File(file.getPath() + ".bz2");
-        if (!input.exists()) input = new File(file.getPath() + ".gz");
-        if (!input.exists()) input = new File(file.getPath() + ".xz");
-        DataInputStream dis;
-        if (!input.exists()) {
+        final File chunked = new File(file.getPath() + ChunkedSplitFile.SUFFIX);
+        if (chunked.exists()) {
+            parseChunked(chunked, pageLimit, sample);
+            return;
+        }
+        final File input = SplitCache.findCompressed(file);
+        if (input == null) {
             // Fallback to uncompressed file
-            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-        } else {
-            InputStream compressedIn = new BufferedInputStream(new FileInputStream(input));
-            try {
-                InputStream in = new CompressorStreamFactory().createCompressorInputStream(compressedIn);
-                in = new ReadAheadBuffer(in, 20 * 1024 * 1024);
-                dis = new DataInputStream(in);
-            } catch (CompressorException e) {
-                throw new IOException(e);
-            }
+            parseMapped(file, pageLimit, sample);
+            return;
+        }
+        final File decoded = SplitCache.decoded(input, splitCache);
+        if (decoded != null) {
+            parseMapped(decoded, pageLimit, sample);
+            return;
         }
+        int pageCount = 0;
+        long recordCount = 0;
+        final DataInputStream dis = new DataInputStream(SplitCache.open(input));
         try {
             while (true) {
                 if (pageLimit >= 0 && pageCount >= pageLimit) {
-                    return;
+                    break;
                 }
 
+                final String title;
                 try {
                     title = dis.readUTF();
                 } catch (EOFException e) {
                     LOG.log(Level.INFO, "EOF reading split.");
-                    dis.close();
-                    return;
+                    break;
                 }
                 final String heading = dis.readUTF();
                 final int bytesLength = dis.readInt();
+                if (!inSample(recordCount++, sample)) {
+                    dis.skipNBytes(bytesLength);
+                    continue;
+                }
                 final byte[] bytes = new byte[bytesLength];
                 dis.readFully(bytes);
                 final String text = new String(bytes, StandardCharsets.UTF_8);
 
-                parseSection(heading, replaceSuperscript(text));
+                handleSection(title, heading, text);
 
                 ++pageCount;
                 if (pageCount % 1000 == 0) {
                     LOG.info("pageCount=" + pageCount);
                 }
             }
+            finishSections();
+        } catch (Throwable e) {
+            cancelSections(e);
+            throw e;
         } finally {
             dis.close();
-            LOG.info("***COUNTERS***");
-            for (final Map.Entry<String, AtomicInteger> entry : counters.entrySet()) {
-                LOG.info(entry.getKey() + ": " + entry.getValue());
+            logCounters();
+        }
+    }
+
+    private void parseMapped(final File file, final int pageLimit, final double sample) throws IOException {
+        int pageCount = 0;
+        long recordCount = 0;
+        try (MappedSplitReader reader = new MappedSplitReader(file)) {
+            while (reader.next()) {
+                if (pageLimit >= 0 && pageCount >= pageLimit) {
+                    break;
+                }
+                if (!inSample(recordCount++, sample)) continue;
+                handleSection(reader.getTitle(), reader.getHeading(), reader.readText());
+
+                ++pageCount;
+                if (pageCount % 1000 == 0) {
+                    LOG.info("pageCount=" + pageCount);
+                }
+            }
+            LOG.log(Level.INFO, "EOF reading split.");
+            finishSections();
+        } catch (Throwable e) {
+            cancelSections(e);
+            throw e;
+        } finally {
+            logCounters();
+        }
+    }
+
+    private void parseChunked(final File file, final int pageLimit, final double sample) throws IOException {
+        int pageCount = 0;
+        try (ChunkedSplitFile.Reader reader = new ChunkedSplitFile.Reader(file)) {
+            for (int chunk = 0; chunk < reader.getChunkCount() && (pageLimit < 0 || pageCount < pageLimit); ++chunk) {
+                if (!inSample(chunk, sample)) continue;
+                for (final ChunkedSplitFile.Record record : reader.readChunk(chunk)) {
+                    if (pageLimit >= 0 && pageCount >= pageLimit) {
+                        break;
+                    }
+                    handleSection(record.title, record.heading, new String(record.text, StandardCharsets.UTF_8));
+
+                    ++pageCount;
+                    if (pageCount % 1000 == 0) {
+                        LOG.info("pageCount=" + pageCount);
+                    }
+                }
+            }
+            LOG.log(Level.INFO, "EOF reading split.");
+            finishSections();
+        } catch (Throwable e) {
+            cancelSections(e);
+            throw e;
+        } finally {
+            logCounters();
+        }
+    }
+
+    private void handleSection(final String title, final String heading, final String text) {
+        if (workers != null) {
+            workers.submit(title, heading, text);
+            return;
+        }
+        this.title = title;
+        parseSection(heading, replaceSuperscript(text));
+    }
+
+    // Only on success: merging after an error could replace it.
+    private void finishSections() {
+        if (workers != null) workers.finish();
+    }
+
+    private void cancelSections(final Throwable error) {
+        if (workers != null) workers.cancel(error);
+    }
+
+    /**
+     * Parses the sections for parseParallel and applies the changes of each
+     * (on the thread submitting them) in the order they were submitted.
+     */
+    private final class SectionWorkers {
+        private final ExecutorService executor;
+        private final ThreadLocal<AbstractWiktionaryParser> parser;
+        private final List<AbstractWiktionaryParser> parsers = Collections.synchronizedList(new ArrayList<>());
+        private final ArrayDeque<Future<List<Runnable>>> pending = new ArrayDeque<>();
+        // Limits the memory for sections waiting to be parsed or merged.
+        private final int maxPending;
+
+        SectionWorkers(final int threads) {
+            executor = Executors.newFixedThreadPool(threads);
+            maxPending = 4 * threads;
+            parser = ThreadLocal.withInitial(() -> {
+                final AbstractWiktionaryParser worker = newWorker();
+                worker.entrySource = entrySource;
+                worker.merger = AbstractWiktionaryParser.this;
+                parsers.add(worker);
+                return worker;
+            });
+        }
+
+        void submit(final String title, final String heading, final String text) {
+            pending.add(executor.submit(() -> {
+                final AbstractWiktionaryParser worker = parser.get();
+                final List<Runnable> changes = new ArrayList<>();
+                IndexBuilder.deferChanges(changes);
+                try {
+                    worker.title = title;
+                    worker.parseSection(heading, worker.replaceSuperscript(text));
+                } finally {
+                    IndexBuilder.deferChanges(null);
+                }
+                return changes;
+            }));
+            if (pending.size() >= maxPending) mergeNext();
+        }
+
+        private void mergeNext() {
+            final List<Runnable> changes;
+            try {
+                changes = pending.remove().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Parsing section failed", e.getCause());
+            }
+            for (final Runnable change : changes) {
+                change.run();
+            }
+        }
+
+        void finish() {
+            try {
+                while (!pending.isEmpty()) mergeNext();
+            } finally {
+                executor.shutdownNow();
+            }
+            for (final AbstractWiktionaryParser worker : parsers) {
+                for (final Map.Entry<String, AtomicInteger> entry : worker.counters.entrySet()) {
+                    counters.computeIfAbsent(entry.getKey(), k -> new AtomicInteger()).addAndGet(entry.getValue().get());
+                }
             }
+            parsers.clear();
+        }
+
+        /**
+         * Stops the workers without merging anything, failures of sections
+         * that were already parsed are added to error as suppressed.
+         */
+        void cancel(final Throwable error) {
+            executor.shutdownNow();
+            try {
+                // Sections being parsed still finish
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (final Future<List<Runnable>> result : pending) {
+                if (!result.isDone()) continue;
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    error.addSuppressed(e.getCause());
+                } catch (InterruptedException | CancellationException e) {
+                    // not parsed
+                }
+            }
+            pending.clear();
+            parsers.clear();
+        }
+    }
+
+    private void logCounters() {
+        LOG.info("***COUNTERS***");
+        for (final Map.Entry<String, AtomicInteger> entry : counters.entrySet()) {
+            LOG.info(entry.getKey() + ": " + entry.getValue());
         }
     }
 
@@ -174,7 +479,8 @@ public abstract class AbstractWiktionaryParser implements Parser {
         StringBuilder builder;
         IndexedEntry indexedEntry;
         IndexBuilder indexBuilder;
-        final Map<String,FunctionCallback<T>> functionCallbacks = new LinkedHashMap<>();
+        // Might be shared by several callbacks and immutable, see WholeSectionToHtmlParser.
+        Map<String,FunctionCallback<T>> functionCallbacks = new LinkedHashMap<>();
 
         boolean entryTypeNameSticks = false;
         EntryTypeName entryTypeName = null;
@@ -195,7 +501,7 @@ public abstract class AbstractWiktionaryParser implements Parser {
             entryTypeNameSticks = false;
         }
 
-        public void dispatch(final String wikiText, final IndexBuilder indexBuilder, final EntryTypeName entryTypeName) {
+        public void dispatch(final CharSequence wikiText, final IndexBuilder indexBuilder, final EntryTypeName entryTypeName) {
             final IndexBuilder oldIndexBuilder = this.indexBuilder;
             final EntryTypeName oldEntryTypeName = this.entryTypeName;
             this.indexBuilder = indexBuilder;
@@ -208,7 +514,7 @@ public abstract class AbstractWiktionaryParser implements Parser {
             this.entryTypeName = oldEntryTypeName;
         }
 
-        public String dispatch(final String wikiText, final EntryTypeName entryTypeName) {
+        public String dispatch(final CharSequence wikiText, final EntryTypeName entryTypeName) {
             final int start = builder.length();
             dispatch(wikiText, this.indexBuilder, entryTypeName);
             return builder.substring(start);
@@ -216,19 +522,26 @@ public abstract class AbstractWiktionaryParser implements Parser {
 
         @Override
         public void onPlainText(final String plainText) {
+            onPlainTextView(plainText);
+        }
+
+        @Override
+        public void onPlainTextView(final CharSequence plainText) {
             // The only non-recursive callback.  Just appends to the builder, and indexes.
-            builder.append(plainText);
+            if (plainText instanceof WikiTokenizer.Slice slice) {
+                slice.appendTo(builder);
+            } else {
+                builder.append(plainText);
+            }
             if (indexBuilder != null && entryTypeName != null && indexedEntry != null) {
-                indexBuilder.addEntryWithString(indexedEntry, plainText, entryTypeName);
+                // Only the indexed text needs its own String.
+                indexBuilder.addEntryWithString(indexedEntry, plainText.toString(), entryTypeName);
             }
         }
 
         @Override
         public void onWikiLink(WikiTokenizer wikiTokenizer) {
-            final String text = wikiTokenizer.wikiLinkText();
-            @SuppressWarnings("unused")
-            final String link = wikiTokenizer.wikiLinkDest();
-            dispatch(text, entryTypeName);
+            dispatch(wikiTokenizer.wikiLinkTextView(), indexBuilder, entryTypeName);
         }
 
         @Override
@@ -0,0 +1,118 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.parser.wiktionary;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class AbstractWiktionaryParserTest extends TestCase {
+
+    static final class TestParser extends AbstractWiktionaryParser {
+        @Override
+        void parseSection(final String heading, final String text) {
+        }
+
+        @Override
+        void removeUselessArgs(final Map<String, String> namedArgs) {
+        }
+
+        @Override
+        AbstractWiktionaryParser newWorker() {
+            return new TestParser();
+        }
+    }
+
+    private static final Pattern SUPERSCRIPT = Pattern.compile("<sup>[0-9]*</sup>");
+
+    // The regular expression loop replaceSuperscript had before.
+    private static String oldReplaceSuperscript(String in) {
+        Matcher matcher;
+        while ((matcher = SUPERSCRIPT.matcher(in)).find()) {
+            String replace = "";
+            String orig = matcher.group();
+            for (int i = 5; i < orig.length() - 6; i++)
+            {
+                char c = switch (orig.charAt(i)) {
+                    case '0' -> '\u2070';
+                    case '1' -> '\u00b9';
+                    case '2' -> '\u00b2';
+                    case '3' -> '\u00b3';
+                    case '4' -> '\u2074';
+                    case '5' -> '\u2075';
+                    case '6' -> '\u2076';
+                    case '7' -> '\u2077';
+                    case '8' -> '\u2078';
+                    case '9' -> '\u2079';
+                    default -> throw new RuntimeException();
+                };
+                replace += c;
+            }
+            in = matcher.replaceFirst(replace);
+        }
+        return in;
+    }
+
+    public void testExamples() {
+        final TestParser parser = new TestParser();
+        final String[] examples = {
+            "",
+            "x<sup>2</sup>",
+            "10<sup>-3</sup> m",
+            "<sup>0123456789</sup>",
+            "a<sup></sup>b",
+            "<sup>1<sup></sup>2</sup>",
+            "<sup><sup></sup>1</sup></sup>",
+            "<sup><sup><sup></sup></sup></sup>",
+            "<sup></<sup></sup>sup>9",
+            "<su<sup></sup>p>1</sup>",
+            "<sup>1</s<sup></sup>up>",
+            "<sup>1</sup><sup>2</sup>",
+            "<sup>1</sup</sup>",
+            "<SUP>1</SUP>",
+            "<sup>1",
+            "</sup>",
+        };
+        for (final String example : examples) {
+            assertEquals(example, oldReplaceSuperscript(example), parser.replaceSuperscript(example));
+        }
+    }
+
+    public void testUnchangedIsSame() {
+        final TestParser parser = new TestParser();
+        for (final String text : new String[] { "", "plain", "<sup>a</sup>", "<sup>1" }) {
+            assertSame(text, parser.replaceSuperscript(text));
+        }
+    }
+
+    public void testRandom() {
+        final String[] parts = { "<sup>", "</sup>", "<sup", "</", "sup>", "</s", "up>", "<", ">", "0", "1", "9", "x", "ä" };
+        final TestParser parser = new TestParser();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; ++i) {
+            final StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(20); j > 0; --j) {
+                text.append(parts[random.nextInt(parts.length)]);
+            }
+            final String example = text.toString();
+            // The same parser, so that its builder is reused
+            assertEquals(example, oldReplaceSuperscript(example), parser.replaceSuperscript(example));
+        }
+    }
+
+}
@@ -34,6 +34,11 @@ public final class EnForeignParser extends EnParser {
         super(enIndexBuilder, otherIndexBuilder, langPattern, langCodePattern, swap);
     }
 
+    @Override
+    AbstractWiktionaryParser newWorker() {
+        return new EnForeignParser(enIndexBuilder, foreignIndexBuilder, langPattern, langCodePattern, swap);
+    }
+
     @Override
     void parseSection(String heading, String text) {
         if (isIgnorableTitle(title)) {
@@ -45,27 +50,22 @@ public final class EnForeignParser extends EnParser {
         }
 
         final WikiTokenizer wikiTokenizer = new WikiTokenizer(text);
-        while (wikiTokenizer.nextToken() != null) {
-            if (wikiTokenizer.isHeading()) {
-                final String headingName = wikiTokenizer.headingWikiText();
-                if (headingName.equals("Translations")) {
-                    LOG.warning("Translations not in English section: " + title);
-                    incrementCount("WARNING: Translations not in English section");
-                } else if (headingName.equals("Pronunciation")) {
-                    //doPronunciation(wikiLineReader);
-                } else if (headingName.startsWith(" {{S|")) {
-                    // HACK to support parsing frwiktionary
-                    String[] parts = headingName.split("\\|");
-                    if (parts.length > 2 && langCodePattern.matcher(parts[2]).find() &&
-                            (parts.length < 4 || !parts[3].startsWith("flexion"))) {
-                        doForeignPartOfSpeech(lang, headingName, wikiTokenizer.headingDepth(), wikiTokenizer);
-                    }
-                } else if (partOfSpeechHeader.matcher(headingName).matches()) {
+        while (wikiTokenizer.skipToNextHeading(Integer.MAX_VALUE) != null) {
+            final String headingName = wikiTokenizer.headingWikiText();
+            if (headingName.equals("Translations")) {
+                LOG.warning("Translations not in English section: " + title);
+                incrementCount("WARNING: Translations not in English section");
+            } else if (headingName.equals("Pronunciation")) {
+                //doPronunciation(wikiLineReader);
+            } else if (headingName.startsWith(" {{S|")) {
+                // HACK to support parsing frwiktionary
+                String[] parts = headingName.split("\\|");
+                if (parts.length > 2 && langCodePattern.matcher(parts[2]).find() &&
+                        (parts.length < 4 || !parts[3].startsWith("flexion"))) {
                     doForeignPartOfSpeech(lang, headingName, wikiTokenizer.headingDepth(), wikiTokenizer);
                 }
-            } else {
-                // It's not a heading.
-                // TODO: optimization: skip to next heading.
+            } else if (partOfSpeechHeader.matcher(headingName).matches()) {
+                doForeignPartOfSpeech(lang, headingName, wikiTokenizer.headingDepth(), wikiTokenizer);
             }
         }
     }
@@ -121,7 +121,11 @@ public final class EnForeignParser extends EnParser {
 
                 if (currentHeadingDepth > posDepth) {
                     // TODO: deal with other neat info sections inside POS
-                    continue;
+                    // Nothing else of the POS section is used.
+                    if (wikiTokenizer.skipToNextHeading(posDepth) != null) {
+                        wikiTokenizer.returnToLineStart();
+                    }
+                    return;
                 }
 
                 if (wikiTokenizer.isFunction()) {
@@ -32,6 +32,11 @@ public final class EnToTranslationParser extends EnParser {
         super(enIndexBuilder, otherIndexBuilder, langPattern, langCodePattern, swap);
     }
 
+    @Override
+    AbstractWiktionaryParser newWorker() {
+        return new EnToTranslationParser(enIndexBuilder, foreignIndexBuilder, langPattern, langCodePattern, swap);
+    }
+
     @Override
     void parseSection(String heading, String text) {
         if (isIgnorableTitle(title)) {
@@ -46,7 +51,8 @@ public final class EnToTranslationParser extends EnParser {
         int posDepth = -1;
 
         final WikiTokenizer wikiTokenizer = new WikiTokenizer(text);
-        while (wikiTokenizer.nextToken() != null) {
+        // Within a POS section only the headings are of interest.
+        while ((pos != null ? wikiTokenizer.skipToNextHeading(Integer.MAX_VALUE) : wikiTokenizer.nextToken()) != null) {
 
             if (wikiTokenizer.isHeading()) {
                 final String headerName = wikiTokenizer.headingWikiText();
@@ -223,9 +229,11 @@ public final class EnToTranslationParser extends EnParser {
 
         final Pair pair = new Pair(trim(englishText.toString()), trim(foreignText.toString()), swap);
         pairEntry.pairs.add(pair);
-        if (!pairsAdded.add(pair.toString())) {
-            LOG.warning("Duplicate pair: " + pair);
-            incrementCount("WARNING: Duplicate pair" );
-        }
+        IndexBuilder.inRecordOrder(() -> {
+            if (!merger.pairsAdded.add(pair.toString())) {
+                LOG.warning("Duplicate pair: " + pair);
+                merger.incrementCount("WARNING: Duplicate pair" );
+            }
+        });
     }
 }  // EnToTranslationParser
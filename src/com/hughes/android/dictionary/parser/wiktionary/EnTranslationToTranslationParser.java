@@ -37,7 +37,8 @@ public final class EnTranslationToTranslationParser extends AbstractWiktionaryPa
     PairEntry pairEntry = null;
     IndexedEntry indexedEntry = null;
     StringBuilder[] builders = null;
-    final HashSet<PairEntry.Pair> allPairs = new HashSet<>();
+    // Shared with the workers, only used in IndexBuilder.inRecordOrder.
+    final HashSet<PairEntry.Pair> allPairs;
 
     public static final String NAME = "EnTranslationToTranslation";
 
@@ -46,8 +47,19 @@ public final class EnTranslationToTranslationParser extends AbstractWiktionaryPa
 
     public EnTranslationToTranslationParser(final List<IndexBuilder> indexBuilders,
                                             final Pattern[] langCodePatterns) {
+        this(indexBuilders, langCodePatterns, new HashSet<>());
+    }
+
+    private EnTranslationToTranslationParser(final List<IndexBuilder> indexBuilders,
+                                             final Pattern[] langCodePatterns, final HashSet<PairEntry.Pair> allPairs) {
         this.indexBuilders = indexBuilders;
         this.langCodePatterns = langCodePatterns;
+        this.allPairs = allPairs;
+    }
+
+    @Override
+    AbstractWiktionaryParser newWorker() {
+        return new EnTranslationToTranslationParser(indexBuilders, langCodePatterns, allPairs);
     }
 
     @Override
@@ -62,9 +74,13 @@ public final class EnTranslationToTranslationParser extends AbstractWiktionaryPa
         }
         final WikiTokenizer.Callback callback = new WikiTokenizer.DoNothingCallback() {
             @Override
-            public void onFunction(WikiTokenizer wikiTokenizer, String name,
-                                   List<String> functionPositionArgs,
-                                   Map<String, String> functionNamedArgs) {
+            public void onPlainTextView(CharSequence text) {
+            }
+
+            @Override
+            public void onFunctionToken(WikiTokenizer wikiTokenizer) {
+                // Only the translations need the arguments.
+                final String name = wikiTokenizer.functionName();
                 //System.out.println(wikiTokenizer.token());
                 if (Ts.contains(name)) {
                     onT(wikiTokenizer);
@@ -77,7 +93,7 @@ public final class EnTranslationToTranslationParser extends AbstractWiktionaryPa
 
             @Override
             public void onListItem(WikiTokenizer wikiTokenizer) {
-                WikiTokenizer.dispatch(wikiTokenizer.listItemWikiText(), false, this);
+                WikiTokenizer.dispatch(wikiTokenizer.listItemWikiTextView(), false, this);
             }
         };
         WikiTokenizer.dispatch(text, true, callback);
@@ -145,13 +161,17 @@ public final class EnTranslationToTranslationParser extends AbstractWiktionaryPa
         final String lang2 = builders[1].toString();
         if (!lang1.isEmpty() && !lang2.isEmpty()) {
             final PairEntry.Pair newPair = new PairEntry.Pair(lang1, lang2);
+            final PairEntry finishedPairEntry = pairEntry;
+            final IndexedEntry finishedIndexedEntry = indexedEntry;
             // brute-force approach to prevent adding duplicates
-            if (!allPairs.contains(newPair))
-            {
-                allPairs.add(newPair);
-                pairEntry.pairs.add(new PairEntry.Pair(lang1, lang2));
-                indexedEntry.isValid = true;
-            }
+            IndexBuilder.inRecordOrder(() -> {
+                if (!allPairs.contains(newPair))
+                {
+                    allPairs.add(newPair);
+                    finishedPairEntry.pairs.add(new PairEntry.Pair(lang1, lang2));
+                    finishedIndexedEntry.isValid = true;
+                }
+            });
         }
 
         pairEntry = null;
@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-import org.apache.commons.text.StringEscapeUtils;
+import org.apache.commons.text.translate.EntityArrays;
 
 import com.hughes.android.dictionary.engine.EntryTypeName;
 import com.hughes.android.dictionary.engine.HtmlEntry;
@@ -31,6 +31,7 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
             Map<String, FunctionCallback<WholeSectionToHtmlParser>> functionCallbacks);
     }
     static final Map<String,LangConfig> isoToLangConfig = new LinkedHashMap<>();
+    static final Map<String,Map<String, FunctionCallback<WholeSectionToHtmlParser>>> isoToFunctionCallbacks = new LinkedHashMap<>();
     static {
         final Pattern enSkipSections = Pattern.compile(".*(Translations|Anagrams|References).*");
         isoToLangConfig.put("EN", new LangConfig() {
@@ -307,6 +308,15 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
                 FrFunctionCallbacks.addGenericCallbacks(functionCallbacks);
             }
         });
+
+        // The callbacks keep no state of their own (it is all in the
+        // AppendCallback passed to them), so all parsers of a language can
+        // share them.
+        for (final Map.Entry<String, LangConfig> entry : isoToLangConfig.entrySet()) {
+            final Map<String, FunctionCallback<WholeSectionToHtmlParser>> functionCallbacks = new LinkedHashMap<>();
+            entry.getValue().addFunctionCallbacks(functionCallbacks);
+            isoToFunctionCallbacks.put(entry.getKey(), Map.copyOf(functionCallbacks));
+        }
     }
 
     final IndexBuilder titleIndexBuilder;
@@ -314,6 +324,9 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
     final String skipLangIso;
     final LangConfig langConfig;
     final String webUrlTemplate;
+    // Reused for all sections, see parseSection().
+    private final AppendCallback callback = new AppendCallback(this);
+    private final StringBuilder htmlBuilder = new StringBuilder();
 
 
     public WholeSectionToHtmlParser(final IndexBuilder titleIndexBuilder, final IndexBuilder defIndexBuilder, final String wiktionaryIso, final String skipLangIso,
@@ -324,6 +337,21 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
         this.langConfig = isoToLangConfig.get(wiktionaryIso);
         this.skipLangIso = skipLangIso;
         this.webUrlTemplate = webUrlTemplate;
+        callback.functionCallbacks = isoToFunctionCallbacks.get(wiktionaryIso);
+    }
+
+    private WholeSectionToHtmlParser(final WholeSectionToHtmlParser parser) {
+        this.titleIndexBuilder = parser.titleIndexBuilder;
+        this.defIndexBuilder = parser.defIndexBuilder;
+        this.langConfig = parser.langConfig;
+        this.skipLangIso = parser.skipLangIso;
+        this.webUrlTemplate = parser.webUrlTemplate;
+        callback.functionCallbacks = parser.callback.functionCallbacks;
+    }
+
+    @Override
+    AbstractWiktionaryParser newWorker() {
+        return new WholeSectionToHtmlParser(this);
     }
 
     IndexedEntry indexedEntry = null;
@@ -334,13 +362,9 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
         final HtmlEntry htmlEntry = new HtmlEntry(entrySource, title);
         indexedEntry = new IndexedEntry(htmlEntry);
 
-        final AppendAndIndexWikiCallback<WholeSectionToHtmlParser> callback = new AppendCallback(
-            this);
-        langConfig.addFunctionCallbacks(callback.functionCallbacks);
-
-        callback.builder = new StringBuilder();
-        callback.indexedEntry = indexedEntry;
-        callback.dispatch(text, null);
+        htmlBuilder.setLength(0);
+        callback.reset(htmlBuilder, indexedEntry);
+        callback.dispatch(text, null, null);
 
         if (webUrlTemplate != null) {
             final String webUrl = String.format(webUrlTemplate, title);
@@ -354,18 +378,22 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
                 callback.builder.append("<p> <a href=\"");
                 callback.builder.append(asciiWebUrl);
                 callback.builder.append("\">");
-                callback.builder.append(escapeHtmlLiteral(webUrl));
+                appendHtmlLiteral(callback.builder, webUrl);
                 callback.builder.append("</a>");
             }
         }
         htmlEntry.html = callback.builder.toString();
         indexedEntry.isValid = true;
 
-        final TokenData tokenData = titleIndexBuilder.getOrCreateTokenData(title);
-        tokenData.hasMainEntry = true;
+        // this.title changes before the change is applied with parseParallel
+        final String title = this.title;
+        IndexBuilder.inRecordOrder(() -> {
+            final TokenData tokenData = titleIndexBuilder.getOrCreateTokenData(title);
+            tokenData.hasMainEntry = true;
 
-        htmlEntry.addToDictionary(titleIndexBuilder.index.dict);
-        tokenData.htmlEntries.add(htmlEntry);
+            htmlEntry.addToDictionary(titleIndexBuilder.index.dict);
+            tokenData.htmlEntries.add(htmlEntry);
+        });
         // titleIndexBuilder.addEntryWithString(indexedEntry, title,
         // EntryTypeName.WIKTIONARY_TITLE_MULTI_DETAIL);
 
@@ -383,14 +411,47 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
         }
     }
 
-    public static String escapeHtmlLiteral(final String plainText) {
-        final String htmlEscaped = StringEscapeUtils.escapeHtml3(plainText);
-        if (StringUtil.isAscii(htmlEscaped)) {
-            return htmlEscaped;
-        } else {
-            return StringUtil.escapeUnicodeToPureHtml(plainText);
+    // What StringEscapeUtils.escapeHtml3 replaces the chars below 256 with,
+    // null for those it keeps.
+    private static final String[] HTML3_ESCAPES = new String[256];
+    static {
+        for (final Map<CharSequence, CharSequence> escapes : List.of(EntityArrays.BASIC_ESCAPE, EntityArrays.ISO8859_1_ESCAPE)) {
+            for (final Map.Entry<CharSequence, CharSequence> escape : escapes.entrySet()) {
+                HTML3_ESCAPES[escape.getKey().charAt(0)] = escape.getValue().toString();
+            }
         }
+    }
+
+    public static String escapeHtmlLiteral(final String plainText) {
+        final StringBuilder builder = new StringBuilder(plainText.length() + 16);
+        appendHtmlLiteral(builder, plainText);
+        return builder.toString();
+    }
 
+    /**
+     * Appends escapeHtmlLiteral(plainText): StringEscapeUtils.escapeHtml3
+     * if that is pure ASCII, otherwise StringUtil.escapeUnicodeToPureHtml.
+     * The first, usual, case is done in one pass directly into builder.
+     */
+    static void appendHtmlLiteral(final StringBuilder builder, final CharSequence plainText) {
+        final int start = builder.length();
+        final int length = plainText.length();
+        int unescaped = 0;
+        for (int i = 0; i < length; ++i) {
+            final char c = plainText.charAt(i);
+            if (c < 128 && HTML3_ESCAPES[c] == null) {
+                continue;
+            }
+            if (c >= HTML3_ESCAPES.length || HTML3_ESCAPES[c] == null) {
+                // escapeHtml3 would keep a non-ASCII char
+                builder.setLength(start);
+                builder.append(StringUtil.escapeUnicodeToPureHtml(plainText.toString()));
+                return;
+            }
+            builder.append(plainText, unescaped, i).append(HTML3_ESCAPES[c]);
+            unescaped = i + 1;
+        }
+        builder.append(plainText, unescaped, length);
     }
 
 
@@ -401,8 +462,24 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
         }
 
         @Override
-        public void onPlainText(String plainText) {
-            super.onPlainText(escapeHtmlLiteral(plainText));
+        public void reset(final StringBuilder builder, final IndexedEntry indexedEntry) {
+            super.reset(builder, indexedEntry);
+            langCodeToTCount.clear();
+            sectionEntryTypeName = null;
+            currentIndexBuilder = null;
+            listPrefixStack.clear();
+            boldOn = false;
+            italicOn = false;
+        }
+
+        @Override
+        public void onPlainTextView(CharSequence plainText) {
+            final int start = builder.length();
+            appendHtmlLiteral(builder, plainText);
+            if (indexBuilder != null && entryTypeName != null && indexedEntry != null) {
+                // Indexed as escaped, like it always was.
+                indexBuilder.addEntryWithString(indexedEntry, builder.substring(start), entryTypeName);
+            }
         }
 
         @Override
@@ -463,14 +540,9 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
             final int depth = wikiTokenizer.headingDepth();
             if (langConfig.skipSection(headingText)) {
                 //System.out.println("Skipping section:" + headingText);
-                while ((wikiTokenizer = wikiTokenizer.nextToken()) != null) {
-                    if (wikiTokenizer.isHeading() && wikiTokenizer.headingDepth() <= depth) {
-                        // System.out.println("Resume on: " + wikiTokenizer.token());
-                        wikiTokenizer.returnToLineStart();
-                        return;
-                    } else {
-                        // System.out.println("Skipped: " + wikiTokenizer.token());
-                    }
+                if (wikiTokenizer.skipToNextHeading(depth) != null) {
+                    // System.out.println("Resume on: " + wikiTokenizer.token());
+                    wikiTokenizer.returnToLineStart();
                 }
                 return;
             }
@@ -498,7 +570,7 @@ public class WholeSectionToHtmlParser extends AbstractWiktionaryParser {
                 listPrefixStack.add(prefix.charAt(listPrefixStack.size()));
             }
             builder.append("<li>");
-            dispatch(wikiTokenizer.listItemWikiText(), null);
+            dispatch(wikiTokenizer.listItemWikiTextView(), null);
             builder.append("</li>\n");
 
             WikiTokenizer nextToken = wikiTokenizer.nextToken();
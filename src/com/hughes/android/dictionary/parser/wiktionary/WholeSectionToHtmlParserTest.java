@@ -0,0 +1,53 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.android.dictionary.parser.wiktionary;
+
+import java.util.Collections;
+
+import com.hughes.android.dictionary.engine.DictionaryBuilder;
+import com.hughes.android.dictionary.engine.EntrySource;
+import com.hughes.android.dictionary.engine.Language;
+
+import junit.framework.TestCase;
+
+public class WholeSectionToHtmlParserTest extends TestCase {
+
+    private static WholeSectionToHtmlParser parser(final DictionaryBuilder db) {
+        final WholeSectionToHtmlParser parser = new WholeSectionToHtmlParser(db.indexBuilders.get(0), null, "EN", "IT", null);
+        parser.entrySource = new EntrySource(0, "dummySource", 0);
+        return parser;
+    }
+
+    private static String parse(final WholeSectionToHtmlParser parser, final String title, final String text) {
+        parser.title = title;
+        parser.parseSection("dummyHeading", text);
+        return parser.titleIndexBuilder.getOrCreateTokenData(title).htmlEntries.get(0).html;
+    }
+
+    // The callback is reused for all sections of a parser, no markup state may leak.
+    public void testUnclosedMarkup() {
+        final String second = "'''bold''' and ''italic'' text";
+        final DictionaryBuilder db = new DictionaryBuilder("", Language.en, Language.it, "", "", Collections.singleton("X"), Collections.singleton("X"));
+        final WholeSectionToHtmlParser parser = parser(db);
+        parse(parser, "first", "'''unclosed bold and ''unclosed italic");
+        final String html = parse(parser, "second", second);
+
+        final DictionaryBuilder fresh = new DictionaryBuilder("", Language.en, Language.it, "", "", Collections.singleton("X"), Collections.singleton("X"));
+        assertEquals(parse(parser(fresh), "second", second), html);
+        assertTrue(html, html.contains("<b>bold</b>"));
+        assertTrue(html, html.contains("<em>italic</em>"));
+    }
+
+}
@@ -14,8 +14,11 @@
 
 package com.hughes.android.dictionary.parser.wiktionary;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 public class WiktionaryLangs {
@@ -215,6 +218,51 @@ public class WiktionaryLangs {
         isoCodeToWikiName.put("EN", Pattern.quote("{{-en-}}"));
         isoCodeToWikiName.put("ES", Pattern.quote("{{-es-}}"));
     }
+    // Title prefixes (before the ':') of pages that WiktionarySplitter ignores.
+    public static final Map<String,Set<String>> wikiCodeToIgnoredNamespaces = new HashMap<>();
+    // For wikis without an entry, everything from above.
+    private static final Set<String> allIgnoredNamespaces = new HashSet<>();
+    static {
+        // Canonical MediaWiki names, they are the same in all wikis.
+        final String[] common = { "MediaWiki", "File", "Template", "Category", "Help", "Module" };
+        addIgnoredNamespaces("en", common);
+        addIgnoredNamespaces("en", "Wiktionary", "Appendix", "Index", "Citations", "Concordance",
+                "Glossary", "Rhymes", "Thesaurus", "Wikisaurus", "Transwiki", "Thread", "Summary", "Reconstruction");
+
+        addIgnoredNamespaces("de", common);
+        addIgnoredNamespaces("de", "Wiktionary", "Datei", "Verzeichnis", "Vorlage", "Thesaurus", "Kategorie", "Hilfe",
+                "Reim", "Rekonstruktion", "Modul");
+
+        addIgnoredNamespaces("fr", common);
+        addIgnoredNamespaces("fr", "Annexe", "Catégori", "Conjugaison", "Convention", "Modèle", "Thésaurus",
+                "Projet", "Aide", "Fichier", "Wiktionnaire", "Catégorie", "Portail", "Racine", "utiliusateur",
+                "Kategorio", "Tutoriel", "Reconstruction", "Transwiki",
+                "Translations:Aide", "Translations:Wiktionnaire", "Translations:Projet");
+
+        addIgnoredNamespaces("it", common);
+        addIgnoredNamespaces("it", "Wikizionario", "Appendice", "Categoria", "Aiuto", "Portail", "Modulo");
+
+        addIgnoredNamespaces("es", common);
+        addIgnoredNamespaces("es", "Apéndice", "Archivo", "Ayuda", "Categoría", "Plantilla", "Wikcionario",
+                "Módulo");
+
+        addIgnoredNamespaces("pt", common);
+        addIgnoredNamespaces("pt", "Ajuda", "Apêndice", "Categoria", "Citações", "Portal", "Predefinição",
+                "Vocabulário", "Wikcionário", "Módulo");
+    }
+
+    private static void addIgnoredNamespaces(final String wikiCode, final String... namespaces) {
+        final Set<String> ignored = wikiCodeToIgnoredNamespaces.computeIfAbsent(wikiCode, k -> new HashSet<>());
+        for (final String namespace : namespaces) {
+            ignored.add(namespace);
+            allIgnoredNamespaces.add(namespace);
+        }
+    }
+
+    public static Set<String> getIgnoredNamespaces(final String wikiCode) {
+        return wikiCodeToIgnoredNamespaces.getOrDefault(wikiCode, allIgnoredNamespaces);
+    }
+
     public static String getEnglishName(String langCode) {
         String name = isoCodeToEnWikiName.get(langCode);
         if (name == null) {
@@ -14,7 +14,9 @@
 
 package com.hughes.util;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @SuppressWarnings("WeakerAccess")
@@ -32,4 +34,42 @@ public class Args {
         }
         return dest;
     }
+
+    /**
+     * Splits a command line into arguments like a shell (without any
+     * expansions): at whitespace outside of quotes, a backslash outside of
+     * single quotes escapes the next character.
+     */
+    public static List<String> split(final String line) {
+        final List<String> result = new ArrayList<>();
+        final StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); ++i) {
+            final char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                arg.append(line.charAt(++i));
+                inArg = true;
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) result.add(arg.toString());
+                arg.setLength(0);
+                inArg = false;
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) throw new IllegalArgumentException("Unterminated quote in: " + line);
+        if (inArg) result.add(arg.toString());
+        return result;
+    }
 }
@@ -0,0 +1,66 @@
+// Copyright 2026 Reimar Döffinger
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.hughes.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class ArgsTest extends TestCase {
+
+    public void testWhitespace() {
+        assertEquals(Collections.emptyList(), Args.split(""));
+        assertEquals(Collections.emptyList(), Args.split(" \t\n"));
+        assertEquals(Arrays.asList("a", "bc", "d"), Args.split("  a bc\t\td\n"));
+    }
+
+    public void testQuotes() {
+        assertEquals(Arrays.asList("a b", "c"), Args.split("\"a b\" c"));
+        assertEquals(Arrays.asList("a b", "c"), Args.split("'a b' c"));
+        assertEquals(Arrays.asList("--x=a b"), Args.split("--x=\"a b\""));
+        assertEquals(Arrays.asList("ab c'd"), Args.split("a'b c'\"'\"d"));
+        assertEquals(Arrays.asList("a\"b"), Args.split("'a\"b'"));
+    }
+
+    public void testEscapes() {
+        assertEquals(Arrays.asList("a b"), Args.split("a\\ b"));
+        assertEquals(Arrays.asList("\"", "'", "\\"), Args.split("\\\" \\' \\\\"));
+        assertEquals(Arrays.asList("a\"b"), Args.split("\"a\\\"b\""));
+        // No escapes within single quotes
+        assertEquals(Arrays.asList("a\\b"), Args.split("'a\\b'"));
+        // A trailing backslash is kept
+        assertEquals(Arrays.asList("a\\"), Args.split("a\\"));
+    }
+
+    public void testEmpty() {
+        assertEquals(Arrays.asList(""), Args.split("\"\""));
+        assertEquals(Arrays.asList("a", "", "b"), Args.split("a '' b"));
+        assertEquals(Arrays.asList("--x="), Args.split("--x=\"\""));
+        assertEquals(Arrays.asList(" "), Args.split("\\ "));
+    }
+
+    public void testUnterminatedQuote() {
+        for (final String line : new String[] { "\"a b", "a 'b", "\"a\\\"", "'" }) {
+            try {
+                Args.split(line);
+                fail(line);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+}